@@ -30,7 +30,13 @@ public class SalesforceBulkProperties extends ComponentProperties {
 
     public Property rowsToCommit = newInteger("rowsToCommit", "10000");
 
-    public Property waitTimeCheckBatchState = newInteger("waitTimeCheckBatchState");
+    public Property waitTimeCheckBatchState = newInteger("waitTimeCheckBatchState", "10000");
+
+    public Property minWaitTimeCheckBatchState = newInteger("minWaitTimeCheckBatchState", "1000");
+
+    public Property parallelUploads = newInteger("parallelUploads", "1");
+
+    public Property streamResults = newBoolean("streamResults");
 
     public SalesforceBulkProperties(String name) {
         super(name);
@@ -44,6 +50,9 @@ public class SalesforceBulkProperties extends ComponentProperties {
         mainForm.addRow(rowsToCommit);
         mainForm.addColumn(bytesToCommit);
         mainForm.addRow(waitTimeCheckBatchState);
+        mainForm.addColumn(minWaitTimeCheckBatchState);
+        mainForm.addRow(parallelUploads);
+        mainForm.addRow(streamResults);
     }
 
 }
@@ -68,6 +68,16 @@ public class SalesforceConnectionProperties extends ComponentProperties
 
     public Property clientId = newString("clientId"); //$NON-NLS-1$
 
+    public Property reuseSession = newBoolean("reuseSession"); //$NON-NLS-1$
+
+    public Property sessionDirectory = newString("sessionDirectory"); //$NON-NLS-1$
+
+    public Property metadataCacheTtl = newInteger("metadataCacheTtl"); //$NON-NLS-1$
+
+    public Property metadataCacheDirectory = newString("metadataCacheDirectory"); //$NON-NLS-1$
+
+    public Property maxConcurrentCalls = newInteger("maxConcurrentCalls"); //$NON-NLS-1$
+
     //
     // Presentation items
     //
@@ -101,6 +111,9 @@ public class SalesforceConnectionProperties extends ComponentProperties
         loginType.setValue(LOGIN_BASIC);
         endpoint.setValue(URL);
         timeout.setValue(60000);
+        reuseSession.setValue(true);
+        metadataCacheTtl.setValue(0);
+        maxConcurrentCalls.setValue(25);
 
     }
 
@@ -130,6 +143,11 @@ public class SalesforceConnectionProperties extends ComponentProperties
         advancedForm.addRow(httpChunked);
         advancedForm.addRow(clientId);
         advancedForm.addRow(timeout);
+        advancedForm.addRow(reuseSession);
+        advancedForm.addRow(sessionDirectory);
+        advancedForm.addRow(metadataCacheTtl);
+        advancedForm.addColumn(metadataCacheDirectory);
+        advancedForm.addRow(maxConcurrentCalls);
         advancedForm.addRow(proxy.getForm(Form.MAIN));
         advanced.setFormtoShow(advancedForm);
 
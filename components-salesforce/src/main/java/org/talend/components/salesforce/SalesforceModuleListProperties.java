@@ -15,7 +15,9 @@ package org.talend.components.salesforce;
 import static org.talend.daikon.properties.PropertyFactory.*;
 import static org.talend.daikon.properties.presentation.Widget.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.avro.Schema;
 import org.talend.components.api.properties.ComponentProperties;
@@ -70,6 +72,7 @@ public class SalesforceModuleListProperties extends ComponentProperties implemen
     }
 
     public void beforeFormPresentMain() throws Exception {
+        SalesforceSourceOrSink.invalidateMetadata(this);
         moduleNames = SalesforceSourceOrSink.getSchemaNames(null, this);
         moduleName.setPossibleValues(moduleNames);
         getForm(Form.MAIN).setAllowBack(true);
@@ -87,11 +90,18 @@ public class SalesforceModuleListProperties extends ComponentProperties implemen
 
         @SuppressWarnings("unchecked")
         List<NamedThing> selectedModuleNames = (List<NamedThing>) moduleName.getValue();
+        List<String> names = new ArrayList<>();
+        for (NamedThing nl : selectedModuleNames) {
+            names.add(nl.getName());
+        }
+        // All the modules are described together rather than one by one, and not taken from the metadata cache.
+        SalesforceSourceOrSink.invalidateMetadata(this, names.toArray(new String[names.size()]));
+        Map<String, Schema> schemas = SalesforceSourceOrSink.getSchemas(null, this, names);
         for (NamedThing nl : selectedModuleNames) {
             SalesforceModuleProperties modProps = new SalesforceModuleProperties(nl.getName());
             modProps.connection = connectionProps;
             modProps.init();
-            Schema schema = SalesforceSourceOrSink.getSchema(null, this, nl.getName());
+            Schema schema = schemas.get(nl.getName());
             modProps.moduleName.setValue(nl.getName());
             modProps.schema.schema.setValue(schema);
             repo.storeProperties(modProps, nl.getName(), connRepLocation, "schema.schema");
@@ -68,6 +68,7 @@ public class SalesforceModuleProperties extends ComponentProperties implements S
 
     public ValidationResult beforeModuleName() throws Exception {
         try {
+            SalesforceSourceOrSink.invalidateMetadata(connection);
             List<NamedThing> moduleNames = SalesforceSourceOrSink.getSchemaNames(null, connection);
             moduleName.setPossibleValues(moduleNames);
         } catch (ComponentException ex) {
@@ -78,6 +79,7 @@ public class SalesforceModuleProperties extends ComponentProperties implements S
 
     public ValidationResult afterModuleName() throws Exception {
         try {
+            SalesforceSourceOrSink.invalidateMetadata(connection, moduleName.getStringValue());
             schema.schema.setValue(SalesforceSourceOrSink.getSchema(null, connection, moduleName.getStringValue()));
         } catch (ComponentException ex) {
             return ex.getValidationResult();
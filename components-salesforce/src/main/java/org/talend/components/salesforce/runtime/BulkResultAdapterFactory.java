@@ -1,9 +1,7 @@
 package org.talend.components.salesforce.runtime;
 
 import org.apache.avro.Schema;
-import org.apache.avro.Schema.Field;
 import org.apache.avro.generic.IndexedRecord;
-import org.talend.daikon.avro.AvroConverter;
 import org.talend.daikon.avro.IndexedRecordAdapterFactory;
 import org.talend.components.salesforce.runtime.SalesforceBulkRuntime.BulkResult;
 
@@ -14,9 +12,14 @@ public class BulkResultAdapterFactory implements IndexedRecordAdapterFactory<Bul
 
     private String names[];
 
-    /** The cached AvroConverter objects for the fields of this record. */
-    @SuppressWarnings("rawtypes")
-    protected transient AvroConverter[] fieldConverter;
+    /** The header the positions were resolved against. */
+    private SalesforceBulkRuntime.BulkResultHeader header;
+
+    /** Position of each field of the schema in the rows of {@link #header}. */
+    private int positions[];
+
+    /** The converter of the values of the schema, shared with the other factories for the same schema. */
+    private transient SalesforceSchemaConverter converter;
 
     @Override
     public Schema getSchema() {
@@ -56,20 +59,23 @@ public class BulkResultAdapterFactory implements IndexedRecordAdapterFactory<Bul
             throw new UnmodifiableAdapterException();
         }
 
-        @SuppressWarnings("unchecked")
         @Override
         public Object get(int i) {
             // Lazy initialization of the cached converter objects.
             if (names == null) {
-                names = new String[getSchema().getFields().size()];
-                fieldConverter = new AvroConverter[names.length];
+                converter = SalesforceSchemaConverter.forSchema(getSchema());
+                names = converter.getNames();
+            }
+            // All the rows of a result stream share the same header, so the positions are only resolved again when
+            // the stream changes.
+            if (value.getHeader() != header) {
+                positions = new int[names.length];
                 for (int j = 0; j < names.length; j++) {
-                    Field f = getSchema().getFields().get(j);
-                    names[j] = f.name();
-                    fieldConverter[j] = SalesforceAvroRegistry.get().getConverterFromString(f);
+                    positions[j] = value.getHeader().indexOf(names[j]);
                 }
+                header = value.getHeader();
             }
-            return fieldConverter[i].convertToAvro(value.getValue(names[i]));
+            return converter.convert(i, value.getValue(positions[i]));
         }
 
         @Override
@@ -0,0 +1,57 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Polls often at first, then doubles the delay every time the job did not progress, up to the maximum delay. When the
+ * job progresses the delay is halved again. A random jitter of up to half the delay keeps parallel jobs from polling in
+ * lockstep.
+ */
+public class ExponentialBackoffPollingStrategy implements SalesforceBulkPollingStrategy {
+
+    private final long minDelay;
+
+    private final long maxDelay;
+
+    private long delay;
+
+    /**
+     * @param minDelay the first delay, in milliseconds.
+     * @param maxDelay the longest delay, in milliseconds.
+     */
+    public ExponentialBackoffPollingStrategy(long minDelay, long maxDelay) {
+        this.minDelay = Math.max(1L, minDelay);
+        this.maxDelay = Math.max(this.minDelay, maxDelay);
+        this.delay = this.minDelay;
+    }
+
+    @Override
+    public void reset() {
+        delay = minDelay;
+    }
+
+    @Override
+    public long nextDelay(boolean progress) {
+        if (progress) {
+            delay = Math.max(minDelay, delay / 2);
+        }
+        long current = delay;
+        if (!progress) {
+            delay = Math.min(maxDelay, delay * 2);
+        }
+        long half = current / 2;
+        return Math.max(minDelay, current - half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+}
@@ -1,11 +1,14 @@
 package org.talend.components.salesforce.runtime;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import org.apache.avro.Schema;
-import org.apache.avro.Schema.Field;
 import org.apache.avro.generic.IndexedRecord;
 
 import com.sforce.soap.partner.sobject.SObject;
-import org.talend.daikon.avro.AvroConverter;
+import com.sforce.ws.bind.XmlObject;
 import org.talend.daikon.avro.IndexedRecordAdapterFactory;
 
 /**
@@ -17,9 +20,18 @@ public class SObjectAdapterFactory implements IndexedRecordAdapterFactory<SObjec
 
     private String names[];
 
-    /** The cached AvroConverter objects for the fields of this record. */
-    @SuppressWarnings("rawtypes")
-    protected transient AvroConverter[] fieldConverter;
+    /**
+     * Position in the children of an SObject of each field of the schema, -1 for a field not found there. All the
+     * records of a query come with their fields in the same order, so this is bound on the first record and checked on
+     * the others.
+     */
+    private int positions[];
+
+    /** Number of children of the SObject the positions were bound on. */
+    private int boundChildCount = -1;
+
+    /** The converter of the values of the schema, shared with the other factories for the same schema. */
+    private transient SalesforceSchemaConverter converter;
 
     @Override
     public Schema getSchema() {
@@ -50,6 +62,8 @@ public class SObjectAdapterFactory implements IndexedRecordAdapterFactory<SObjec
 
         private final SObject value;
 
+        private XmlObject[] children;
+
         public SObjectIndexedRecord(SObject value) {
             this.value = value;
         }
@@ -64,20 +78,70 @@ public class SObjectAdapterFactory implements IndexedRecordAdapterFactory<SObjec
             throw new UnmodifiableAdapterException();
         }
 
-        @SuppressWarnings("unchecked")
         @Override
         public Object get(int i) {
             // Lazy initialization of the cached converter objects.
             if (names == null) {
-                names = new String[getSchema().getFields().size()];
-                fieldConverter = new AvroConverter[names.length];
-                for (int j = 0; j < names.length; j++) {
-                    Field f = getSchema().getFields().get(j);
-                    names[j] = f.name();
-                    fieldConverter[j] = SalesforceAvroRegistry.get().getConverterFromString(f);
+                converter = SalesforceSchemaConverter.forSchema(getSchema());
+                names = converter.getNames();
+            }
+            if (children == null) {
+                children = getChildren(value);
+                if (!isBound(children)) {
+                    bind(children);
+                }
+            }
+            int p = positions[i];
+            // A field that is not a child of the record is still looked up by name.
+            Object fieldValue = p < 0 ? value.getSObjectField(names[i]) : getFieldValue(children[p]);
+            return converter.convert(i, fieldValue);
+        }
+    }
+
+    private static XmlObject[] getChildren(SObject value) {
+        List<XmlObject> children = new ArrayList<>();
+        Iterator<XmlObject> it = value.getChildren();
+        while (it.hasNext()) {
+            children.add(it.next());
+        }
+        return children.toArray(new XmlObject[children.size()]);
+    }
+
+    /**
+     * @return true if the fields of the record are at the positions already bound.
+     */
+    private boolean isBound(XmlObject[] children) {
+        if (positions == null || children.length != boundChildCount) {
+            return false;
+        }
+        for (int j = 0; j < positions.length; j++) {
+            if (positions[j] >= 0 && !names[j].equals(children[positions[j]].getName().getLocalPart())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void bind(XmlObject[] children) {
+        int[] p = new int[names.length];
+        for (int j = 0; j < names.length; j++) {
+            p[j] = -1;
+            // Same as SObject.getSObjectField, the first child with the name wins.
+            for (int c = 0; c < children.length; c++) {
+                if (names[j].equals(children[c].getName().getLocalPart())) {
+                    p[j] = c;
+                    break;
                 }
             }
-            return fieldConverter[i].convertToAvro(value.getSObjectField(names[i]));
         }
+        positions = p;
+        boundChildCount = children.length;
+    }
+
+    /**
+     * @return the value of a field as returned by {@link SObject#getSObjectField}: nested objects are returned as is.
+     */
+    private static Object getFieldValue(XmlObject field) {
+        return field.hasChildren() ? field : field.getValue();
     }
 }
@@ -0,0 +1,291 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sforce.soap.partner.LimitInfo;
+import com.sforce.soap.partner.LimitInfoHeader_element;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+
+/**
+ * Keeps track of the API usage of the components of this process for each Salesforce org, and bounds the number of
+ * calls they make to an org at the same time.
+ *
+ * The calls wait for a permit of the org in the order they were made, so that a component sending many calls does not
+ * hold back the others. The number of API requests used by the org and its daily limit are read from the limit info
+ * header returned with the SOAP calls; the Bulk API does not return it, so its calls, jobs and batches are only
+ * counted.
+ */
+class SalesforceApiGovernor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SalesforceApiGovernor.class);
+
+    /** The number of long running requests Salesforce accepts at the same time for an org. */
+    static final int DEFAULT_MAX_CONCURRENT_CALLS = 25;
+
+    /** Share of the daily API requests under which a warning is logged. */
+    static final double LOW_API_REQUESTS = 0.1;
+
+    private static final String API_REQUESTS = "API REQUESTS";
+
+    private static final ConcurrentMap<String, SalesforceApiGovernor> GOVERNORS = new ConcurrentHashMap<>();
+
+    /**
+     * A call using the API of an org.
+     */
+    interface Call<T> {
+
+        T call() throws ConnectionException;
+    }
+
+    /**
+     * The API usage of an org at some point.
+     */
+    static class Usage {
+
+        /** Calls being made at this point. */
+        final int activeCalls;
+
+        /** Calls made by this process. */
+        final long calls;
+
+        /** Bulk jobs created by this process. */
+        final long jobs;
+
+        /** Bulk batches created by this process. */
+        final long batches;
+
+        /** API requests used by the org in the last 24 hours, or -1 if not known yet. */
+        final int apiRequests;
+
+        /** API requests the org can make in 24 hours, or -1 if not known yet. */
+        final int apiRequestsLimit;
+
+        Usage(int activeCalls, long calls, long jobs, long batches, int apiRequests, int apiRequestsLimit) {
+            this.activeCalls = activeCalls;
+            this.calls = calls;
+            this.jobs = jobs;
+            this.batches = batches;
+            this.apiRequests = apiRequests;
+            this.apiRequestsLimit = apiRequestsLimit;
+        }
+
+        /**
+         * @return the API requests the org can still make, or -1 if not known yet.
+         */
+        int getRemainingApiRequests() {
+            return apiRequestsLimit < 0 ? -1 : Math.max(0, apiRequestsLimit - apiRequests);
+        }
+
+        @Override
+        public String toString() {
+            return "active calls: " + activeCalls + ", calls: " + calls + ", jobs: " + jobs + ", batches: " + batches
+                    + ", API requests: " + apiRequests + "/" + apiRequestsLimit;
+        }
+    }
+
+    /**
+     * Permits that can be taken away while they are held.
+     */
+    private static class Permits extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        Permits(int permits) {
+            super(permits, true);
+        }
+
+        void reduce(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+
+    private final String org;
+
+    /** The number of calls made at the same time, guarded by this. */
+    private int maxConcurrentCalls;
+
+    /** Whether the number of calls was set by the connection of a component rather than defaulted, guarded by this. */
+    private boolean configured;
+
+    private final Permits permits;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong jobs = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    /** The API requests used and their limit, updated together, guarded by this. */
+    private int apiRequests = -1;
+
+    private int apiRequestsLimit = -1;
+
+    private boolean warned;
+
+    /**
+     * @param maxConcurrentCalls the number of calls made at the same time, or 0 or less for no limit.
+     */
+    SalesforceApiGovernor(String org, int maxConcurrentCalls) {
+        this.org = org;
+        this.maxConcurrentCalls = maxConcurrentCalls > 0 ? maxConcurrentCalls : Integer.MAX_VALUE;
+        this.permits = new Permits(this.maxConcurrentCalls);
+    }
+
+    /**
+     * @param maxConcurrentCalls the number of calls made to the org at the same time, only used by the first component
+     * connecting to the org.
+     * @return the governor of the org.
+     */
+    static SalesforceApiGovernor forOrg(String org, int maxConcurrentCalls) {
+        SalesforceApiGovernor governor = getOrCreate(org);
+        governor.configure(maxConcurrentCalls);
+        return governor;
+    }
+
+    /**
+     * @return the governor of the org the connection is logged in, with the number of calls of the component that
+     * connected to the org first, or the default number if none did yet.
+     */
+    static SalesforceApiGovernor forConnection(PartnerConnection connection) {
+        return getOrCreate(getOrg(connection.getConfig().getServiceEndpoint()));
+    }
+
+    private static SalesforceApiGovernor getOrCreate(String org) {
+        SalesforceApiGovernor governor = GOVERNORS.get(org);
+        if (governor == null) {
+            SalesforceApiGovernor created = new SalesforceApiGovernor(org, DEFAULT_MAX_CONCURRENT_CALLS);
+            governor = GOVERNORS.putIfAbsent(org, created);
+            if (governor == null) {
+                governor = created;
+            }
+        }
+        return governor;
+    }
+
+    /**
+     * Use the number of calls of a component, unless another component set it already.
+     */
+    private synchronized void configure(int max) {
+        max = max > 0 ? max : Integer.MAX_VALUE;
+        if (configured) {
+            if (max != maxConcurrentCalls) {
+                LOG.debug("The calls to {} are already limited to {} at the same time", org, maxConcurrentCalls);
+            }
+            return;
+        }
+        configured = true;
+        // The calls being made keep their permits, the change applies to the next ones.
+        if (max > maxConcurrentCalls) {
+            permits.release(max - maxConcurrentCalls);
+        } else if (max < maxConcurrentCalls) {
+            permits.reduce(maxConcurrentCalls - max);
+        }
+        maxConcurrentCalls = max;
+    }
+
+    /**
+     * @return the number of calls made to the org at the same time.
+     */
+    synchronized int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @return the id of the org in the SOAP endpoint of a session, or the endpoint itself if it does not end with it.
+     */
+    static String getOrg(String serviceEndpoint) {
+        if (serviceEndpoint == null) {
+            return "";
+        }
+        String last = serviceEndpoint.substring(serviceEndpoint.lastIndexOf('/') + 1);
+        return last.startsWith("00D") ? last : serviceEndpoint;
+    }
+
+    /**
+     * Make a SOAP call on the connection, then read the API usage of the org returned with its response.
+     */
+    <T> T call(PartnerConnection connection, Call<T> call) throws ConnectionException {
+        acquire();
+        T result;
+        try {
+            result = call.call();
+        } finally {
+            release();
+        }
+        update(connection.getLimitInfoHeader());
+        return result;
+    }
+
+    /**
+     * Wait for a permit to make a call, to be released once it is done.
+     */
+    void acquire() throws ConnectionException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while waiting to call " + org, e);
+        }
+        calls.incrementAndGet();
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    void jobCreated() {
+        jobs.incrementAndGet();
+    }
+
+    void batchCreated() {
+        batches.incrementAndGet();
+    }
+
+    /**
+     * Keep the API requests of the org given by the limit info header of a response.
+     */
+    void update(LimitInfoHeader_element header) {
+        if (header == null || header.getLimitInfo() == null) {
+            return;
+        }
+        for (LimitInfo info : header.getLimitInfo()) {
+            if (API_REQUESTS.equals(info.getType())) {
+                update(info.getCurrent(), info.getLimit());
+            }
+        }
+    }
+
+    synchronized void update(int used, int limit) {
+        apiRequests = used;
+        apiRequestsLimit = limit;
+        boolean low = limit > 0 && limit - used < limit * LOW_API_REQUESTS;
+        if (low && !warned) {
+            LOG.warn("The org {} used {} of its {} daily API requests", org, used, limit);
+        }
+        warned = low;
+    }
+
+    synchronized Usage getUsage() {
+        return new Usage(maxConcurrentCalls - permits.availablePermits(), calls.get(), jobs.get(), batches.get(),
+                apiRequests, apiRequestsLimit);
+    }
+}
@@ -0,0 +1,176 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+
+/**
+ * Sends batches of records to Salesforce on a pool of worker threads, each call using one of the given connections.
+ *
+ * The results are handed back to the caller thread in the order the batches were submitted, so the result handling of
+ * the writer does not need to be thread-safe. At most {@code maxPending} batches can be in flight: {@link #submit}
+ * blocks on the oldest one when this limit is reached.
+ */
+class SalesforceAsyncSender {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SalesforceAsyncSender.class);
+
+    /** How long {@link #close} waits for the calls in flight, in milliseconds. */
+    static final long CLOSE_TIMEOUT = 5 * 60 * 1000L;
+
+    /**
+     * A single SOAP call using the given connection.
+     */
+    interface BatchCall<T> {
+
+        T call(PartnerConnection connection) throws ConnectionException;
+    }
+
+    /**
+     * Handles the result of a call on the caller thread.
+     */
+    interface ResultHandler<T> {
+
+        void handle(T results, long elapsed) throws IOException;
+    }
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final BlockingQueue<PartnerConnection> connections;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private final Deque<PendingBatch<?>> pending = new ArrayDeque<>();
+
+    SalesforceAsyncSender(List<PartnerConnection> connections, int maxPending) {
+        this.connections = new ArrayBlockingQueue<>(connections.size(), false, connections);
+        this.maxPending = Math.max(maxPending, connections.size());
+        this.executor = Executors.newFixedThreadPool(connections.size(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "salesforce-sender-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Queue a call, first handling the results of the batches that are already finished.
+     */
+    <T> void submit(final BatchCall<T> call, ResultHandler<T> handler) throws IOException {
+        while (pending.size() >= maxPending || (!pending.isEmpty() && pending.peekFirst().future.isDone())) {
+            handleFirst();
+        }
+        Future<TimedResult<T>> future = executor.submit(() -> {
+            PartnerConnection connection = connections.take();
+            try {
+                long start = System.currentTimeMillis();
+                T results = call.call(connection);
+                return new TimedResult<>(results, System.currentTimeMillis() - start);
+            } finally {
+                connections.put(connection);
+            }
+        });
+        pending.addLast(new PendingBatch<>(future, handler));
+    }
+
+    /**
+     * Wait for all the submitted batches and handle their results in order.
+     */
+    void drain() throws IOException {
+        while (!pending.isEmpty()) {
+            handleFirst();
+        }
+    }
+
+    /**
+     * Drop the batches that are not sent yet, and wait for the calls in flight so that none is cut in the middle.
+     */
+    void close() {
+        for (PendingBatch<?> batch : pending) {
+            batch.future.cancel(false);
+        }
+        pending.clear();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Salesforce calls still running after {} ms", CLOSE_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleFirst() throws IOException {
+        pending.removeFirst().handle();
+    }
+
+    private static class TimedResult<T> {
+
+        final T results;
+
+        final long elapsed;
+
+        TimedResult(T results, long elapsed) {
+            this.results = results;
+            this.elapsed = elapsed;
+        }
+    }
+
+    private static class PendingBatch<T> {
+
+        final Future<TimedResult<T>> future;
+
+        final ResultHandler<T> handler;
+
+        PendingBatch(Future<TimedResult<T>> future, ResultHandler<T> handler) {
+            this.future = future;
+            this.handler = handler;
+        }
+
+        void handle() throws IOException {
+            TimedResult<T> result;
+            try {
+                result = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            handler.handle(result.results, result.elapsed);
+        }
+    }
+}
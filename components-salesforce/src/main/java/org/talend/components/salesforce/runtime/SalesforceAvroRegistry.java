@@ -13,9 +13,11 @@ import org.talend.daikon.java8.SerializableFunction;
 import java.math.BigDecimal;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 /**
  *
@@ -105,10 +107,10 @@ public class SalesforceAvroRegistry extends AvroRegistry {
             // pattern will be removed when we have db type for salesforce
             switch (field.getType()){
                 case date:
-                    avroField.addProp(SchemaConstants.TALEND_COLUMN_PATTERN, "yyyy-MM-dd");
+                    avroField.addProp(SchemaConstants.TALEND_COLUMN_PATTERN, SalesforceValueParser.DATE_PATTERN);
                     break;
                 case datetime:
-                    avroField.addProp(SchemaConstants.TALEND_COLUMN_PATTERN, "yyyy-MM-dd'T'HH:mm:ss'.000Z'");
+                    avroField.addProp(SchemaConstants.TALEND_COLUMN_PATTERN, SalesforceValueParser.DATETIME_PATTERN);
                     break;
                 default:
                     break;
@@ -240,7 +242,11 @@ public class SalesforceAvroRegistry extends AvroRegistry {
 
         @Override
         public BigDecimal convertToAvro(String value) {
-            return value == null ? null : new BigDecimal(value);
+            if (value == null) {
+                return null;
+            }
+            BigDecimal result = SalesforceValueParser.parseDecimal(value);
+            return result != null ? result : new BigDecimal(value);
         }
     }
 
@@ -252,25 +258,63 @@ public class SalesforceAvroRegistry extends AvroRegistry {
 
         @Override
         public Double convertToAvro(String value) {
-            return value == null ? null : Double.parseDouble(value);
+            if (value == null) {
+                return null;
+            }
+            Double result = SalesforceValueParser.parseDouble(value);
+            return result != null ? result : Double.parseDouble(value);
         }
     }
 
+    /**
+     * Converts dates with the pattern of the field. The patterns assigned by the registry are parsed without a
+     * {@link SimpleDateFormat}, and the formats used for the other patterns are kept per thread, so that a converter
+     * can be shared by concurrent readers.
+     */
     public static class StringToDateConverter extends AsStringConverter<Long> {
 
-        private final SimpleDateFormat format;
+        private final String pattern;
+
+        private final ZoneId zone;
+
+        private transient ThreadLocal<SimpleDateFormat> format;
 
         StringToDateConverter(Schema.Field field) {
             super(field);
-            String pattern = field.getProp(SchemaConstants.TALEND_COLUMN_PATTERN);
+            pattern = field.getProp(SchemaConstants.TALEND_COLUMN_PATTERN);
             // TODO: null handling
-            format = new SimpleDateFormat(pattern);
+            zone = TimeZone.getDefault().toZoneId();
+        }
+
+        private SimpleDateFormat getFormat() {
+            if (format == null) {
+                format = new ThreadLocal<SimpleDateFormat>() {
+
+                    @Override
+                    protected SimpleDateFormat initialValue() {
+                        return new SimpleDateFormat(pattern);
+                    }
+                };
+            }
+            return format.get();
         }
 
         @Override
         public Long convertToAvro(String value) {
+            if (value == null) {
+                return null;
+            }
+            Long time = null;
+            if (SalesforceValueParser.DATETIME_PATTERN.equals(pattern)) {
+                time = SalesforceValueParser.parseDateTime(value, zone);
+            } else if (SalesforceValueParser.DATE_PATTERN.equals(pattern)) {
+                time = SalesforceValueParser.parseDate(value, zone);
+            }
+            if (time != null) {
+                return time;
+            }
             try {
-                return value == null ? null : format.parse(value).getTime();
+                return getFormat().parse(value).getTime();
             } catch (ParseException e) {
                 // TODO: error handling
                 e.printStackTrace();
@@ -280,7 +324,7 @@ public class SalesforceAvroRegistry extends AvroRegistry {
 
         @Override
         public String convertToDatum(Long value) {
-            return value == null ? null : format.format(new Date(value));
+            return value == null ? null : getFormat().format(new Date(value));
         }
 
     }
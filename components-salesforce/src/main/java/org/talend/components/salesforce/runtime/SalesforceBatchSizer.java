@@ -0,0 +1,81 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+/**
+ * Computes the number of records to send in a single SOAP create/update/upsert/delete call.
+ *
+ * The size starts at the configured commit level (never more than the 200 records accepted by the partner API) and is
+ * then adapted after each call: it is halved when a call is slower than the target latency or when the observed
+ * payload would exceed the maximum request size, and it grows back slowly while the calls are fast.
+ */
+class SalesforceBatchSizer {
+
+    /** Maximum number of records accepted by a single partner API call. */
+    static final int SOAP_MAX_BATCH_SIZE = 200;
+
+    /** Keep the request payload well below the 50MB accepted by the SOAP API. */
+    static final long MAX_PAYLOAD_BYTES = 10L * 1024 * 1024;
+
+    static final long DEFAULT_TARGET_LATENCY = 15000L;
+
+    private final int maxBatchSize;
+
+    private final long targetLatency;
+
+    private int batchSize;
+
+    /**
+     * @param commitLevel the configured commit level.
+     * @param timeout the connection timeout in milliseconds, or 0 if there is none.
+     */
+    SalesforceBatchSizer(int commitLevel, int timeout) {
+        maxBatchSize = Math.max(1, Math.min(commitLevel, SOAP_MAX_BATCH_SIZE));
+        // A batch should never come close to the connection timeout.
+        targetLatency = timeout > 0 ? timeout / 4 : DEFAULT_TARGET_LATENCY;
+        batchSize = maxBatchSize;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Record the outcome of a call and compute the size of the next batch.
+     *
+     * @param records the number of records sent.
+     * @param elapsed the duration of the call in milliseconds.
+     * @param payloadBytes the estimated size of the records sent.
+     */
+    void update(int records, long elapsed, long payloadBytes) {
+        if (records <= 0) {
+            return;
+        }
+        int next = batchSize;
+        if (elapsed > targetLatency) {
+            next = batchSize / 2;
+        } else if (elapsed < targetLatency / 2 && records >= batchSize) {
+            // Only grow when the batch was full, a flush on close says nothing about the latency of a full batch.
+            next = batchSize + Math.max(1, batchSize / 4);
+        }
+        long bytesPerRecord = payloadBytes / records;
+        if (bytesPerRecord > 0 && next * bytesPerRecord > MAX_PAYLOAD_BYTES) {
+            next = (int) (MAX_PAYLOAD_BYTES / bytesPerRecord);
+        }
+        batchSize = Math.max(1, Math.min(next, maxBatchSize));
+    }
+}
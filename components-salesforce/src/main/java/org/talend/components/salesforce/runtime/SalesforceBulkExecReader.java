@@ -17,10 +17,10 @@ import com.sforce.ws.ConnectionException;
 import org.apache.avro.generic.IndexedRecord;
 import org.talend.components.api.container.RuntimeContainer;
 import org.talend.components.salesforce.runtime.SalesforceBulkRuntime.BulkResult;
+import org.talend.components.salesforce.runtime.SalesforceBulkRuntime.BulkResultSet;
 import org.talend.components.salesforce.tsalesforcebulkexec.TSalesforceBulkExecProperties;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.Map;
 
 final class SalesforceBulkExecReader extends SalesforceReader {
@@ -30,9 +30,20 @@ final class SalesforceBulkExecReader extends SalesforceReader {
 
     private int batchIndex;
 
-    private List<BulkResult> currentBatchResult;
+    private BulkResultSet currentBatchResult;
 
-    private int resultIndex;
+    private BulkResult currentRecord;
+
+    /** Number of batches whose results were fully read. */
+    private volatile int batchesRead;
+
+    /** Number of records sent in the current batch. */
+    private volatile int currentBatchRows;
+
+    /** Number of results read from the current batch. */
+    private volatile int resultsRead;
+
+    private boolean streamResults;
 
     public SalesforceBulkExecReader(RuntimeContainer container, SalesforceSource source, TSalesforceBulkExecProperties props) {
         super(container, source);
@@ -46,19 +57,24 @@ final class SalesforceBulkExecReader extends SalesforceReader {
         bulkRuntime = new SalesforceBulkRuntime((SalesforceSource) getCurrentSource(),container);
         bulkRuntime.setConcurrencyMode(sprops.bulkProperties.concurrencyMode.getStringValue());
         bulkRuntime.setAwaitTime(sprops.bulkProperties.waitTimeCheckBatchState.getIntValue());
+        bulkRuntime.setMinAwaitTime(sprops.bulkProperties.minWaitTimeCheckBatchState.getIntValue());
+        bulkRuntime.setParallelUploads(sprops.bulkProperties.parallelUploads.getIntValue());
+        streamResults = sprops.bulkProperties.streamResults.getBooleanValue();
 
         try {
             // We only support CSV file for bulk output
-            bulkRuntime.executeBulk(sprops.module.moduleName.getStringValue(), sprops.outputAction.getStringValue(),
-                    sprops.upsertKeyColumn.getStringValue(), "csv", sprops.bulkFilePath.getStringValue(),
-                    sprops.bulkProperties.bytesToCommit.getIntValue(), sprops.bulkProperties.rowsToCommit.getIntValue());
-            if(bulkRuntime.getBatchCount()>0){
-                batchIndex = 0;
-                currentBatchResult = bulkRuntime.getBatchLog(0);
-                resultIndex = 0;
-                return currentBatchResult.size()>0;
+            if (streamResults) {
+                bulkRuntime.submitBulk(sprops.module.moduleName.getStringValue(), sprops.outputAction.getStringValue(),
+                        sprops.upsertKeyColumn.getStringValue(), "csv", sprops.bulkFilePath.getStringValue(),
+                        sprops.bulkProperties.bytesToCommit.getIntValue(), sprops.bulkProperties.rowsToCommit.getIntValue());
+            } else {
+                bulkRuntime.executeBulk(sprops.module.moduleName.getStringValue(), sprops.outputAction.getStringValue(),
+                        sprops.upsertKeyColumn.getStringValue(), "csv", sprops.bulkFilePath.getStringValue(),
+                        sprops.bulkProperties.bytesToCommit.getIntValue(), sprops.bulkProperties.rowsToCommit.getIntValue());
             }
-            return false;
+            batchIndex = -1;
+            batchesRead = 0;
+            return nextBatch();
         } catch (AsyncApiException | ConnectionException e) {
             throw new IOException(e);
         }
@@ -68,19 +84,46 @@ final class SalesforceBulkExecReader extends SalesforceReader {
         return null;
     }
 
+    /**
+     * Load the results of the next batch that has some, either in the order of the file or, when streaming the
+     * results, in the order the batches are processed by Salesforce.
+     */
+    private boolean nextBatch() throws IOException, AsyncApiException, ConnectionException {
+        while (true) {
+            if (currentBatchResult != null) {
+                currentBatchResult.close();
+                currentBatchResult = null;
+                batchesRead++;
+                resultsRead = 0;
+            }
+            if (streamResults) {
+                batchIndex = bulkRuntime.nextCompletedBatch();
+            } else {
+                batchIndex = batchIndex + 1 < bulkRuntime.getBatchCount() ? batchIndex + 1 : -1;
+            }
+            if (batchIndex < 0) {
+                return false;
+            }
+            currentBatchRows = bulkRuntime.getBatchRowCount(batchIndex);
+            currentBatchResult = bulkRuntime.getBatchLogResultSet(batchIndex);
+            currentRecord = currentBatchResult.next();
+            if (currentRecord != null) {
+                resultsRead = 1;
+                return true;
+            }
+        }
+    }
+
     @Override
     public boolean advance() throws IOException {
-        if (++resultIndex >= currentBatchResult.size()) {
-            if(++batchIndex >= bulkRuntime.getBatchCount()){
-                return false;
-            }else {
-                try {
-                    currentBatchResult = bulkRuntime.getBatchLog(batchIndex);
-                    resultIndex = 0;
-                    return currentBatchResult.size()>0;
-                } catch (AsyncApiException|ConnectionException e) {
-                    throw new IOException(e);
-                }
+        currentRecord = currentBatchResult.next();
+        if (currentRecord != null) {
+            resultsRead++;
+        } else {
+            try {
+                return nextBatch();
+            } catch (AsyncApiException|ConnectionException e) {
+                throw new IOException(e);
             }
         }
         return true;
@@ -90,14 +133,28 @@ final class SalesforceBulkExecReader extends SalesforceReader {
     public IndexedRecord getCurrent() {
         // TODO need change after component REJECT line can be work.
         try {
-            return ((BulkResultAdapterFactory)getFactory()).convertToAvro(currentBatchResult.get(resultIndex));
+            return ((BulkResultAdapterFactory)getFactory()).convertToAvro(currentRecord);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public Double getFractionConsumed() {
+        int batchCount = bulkRuntime == null ? 0 : bulkRuntime.getBatchCount();
+        if (batchCount == 0) {
+            return null;
+        }
+        double batchFraction = currentBatchRows > 0 ? Math.min(1.0, (double) resultsRead / currentBatchRows) : 0.0;
+        return Math.min(1.0, (batchesRead + batchFraction) / batchCount);
+    }
+
     @Override
     public void close() throws IOException {
+        if (currentBatchResult != null) {
+            currentBatchResult.close();
+        }
         bulkRuntime.close();
+        SalesforceSourceOrSink.setApiUsage(container, bulkRuntime.getApiUsage());
     }
 }
\ No newline at end of file
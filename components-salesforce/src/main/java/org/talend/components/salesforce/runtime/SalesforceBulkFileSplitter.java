@@ -0,0 +1,326 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits a CSV bulk file into batches without copying it.
+ *
+ * Each batch is a region of the file memory-mapped read-only. Record boundaries are found on the raw bytes: a record
+ * ends on a line feed that is not inside a quoted value. This is safe for UTF-8 content since the bytes of a multi-byte
+ * character never match a quote or a line feed. The header record of the file is sent again in front of every batch.
+ * The blank lines at the end of the file are not sent.
+ *
+ * The regions are unmapped once released or when the splitter is closed, rather than when they are collected, so that
+ * the file is not kept open; a released batch must not be read again.
+ */
+class SalesforceBulkFileSplitter implements Closeable {
+
+    private static final byte QUOTE = '"';
+
+    private static final byte LF = '\n';
+
+    private static final byte CR = '\r';
+
+    /** Size of the regions read to find the end of the content of the file. */
+    private static final int TAIL_LENGTH = 8192;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    /** Offset of the end of the content of the file, blank lines excluded. */
+    private final long size;
+
+    /** The regions of the batches returned and not released yet. */
+    private final Set<ByteBuffer> mapped = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+
+    private final int maxBytesPerBatch;
+
+    private final int maxRowsPerBatch;
+
+    private final byte[] header;
+
+    /** Offset in the file of the first record of the next batch. */
+    private long position;
+
+    private int batchRows;
+
+    private long batchOffset;
+
+    /**
+     * @param bulkFile the CSV file, its first record is the header.
+     * @param maxBytesPerBatch the maximum size of a batch, header included.
+     * @param maxRowsPerBatch the maximum number of records of a batch, header excluded.
+     */
+    SalesforceBulkFileSplitter(File bulkFile, int maxBytesPerBatch, int maxRowsPerBatch) throws IOException {
+        this.file = new RandomAccessFile(bulkFile, "r");
+        this.channel = file.getChannel();
+        this.size = findContentEnd(channel.size());
+        this.maxBytesPerBatch = maxBytesPerBatch;
+        this.maxRowsPerBatch = Math.max(1, maxRowsPerBatch);
+
+        long headerEnd = findRecordEnd(0);
+        ByteBuffer headerBuffer = map(0, headerEnd);
+        boolean endsWithLineFeed = headerEnd > 0 && headerBuffer.get((int) headerEnd - 1) == LF;
+        header = new byte[(int) headerEnd + (endsWithLineFeed ? 0 : 1)];
+        headerBuffer.get(header, 0, (int) headerEnd);
+        unmap(headerBuffer);
+        if (!endsWithLineFeed) {
+            header[header.length - 1] = LF;
+        }
+        position = headerEnd;
+    }
+
+    byte[] getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the number of records of the last batch returned by {@link #nextBatch()}.
+     */
+    int getBatchRows() {
+        return batchRows;
+    }
+
+    /**
+     * @return the offset in the file of the first record of the last batch returned by {@link #nextBatch()}.
+     */
+    long getBatchOffset() {
+        return batchOffset;
+    }
+
+    /**
+     * @return the records of the next batch, or null if the whole file has been read.
+     */
+    ByteBuffer nextBatch() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        long windowLength = Math.min(size - position, Math.max(1, maxBytesPerBatch - header.length));
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+
+        int end = 0;
+        int rows = 0;
+        int recordStart = 0;
+        boolean inQuotes = false;
+        int limit = window.limit();
+        for (int i = 0; i < limit && rows < maxRowsPerBatch; i++) {
+            byte b = window.get(i);
+            if (b == QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (b == LF && !inQuotes) {
+                rows++;
+                end = i + 1;
+                recordStart = end;
+            }
+        }
+        if (rows < maxRowsPerBatch && position + limit == size && recordStart < limit) {
+            // The last record of the file does not end with a line feed.
+            rows++;
+            end = limit;
+        }
+        if (rows == 0) {
+            // A single record larger than a batch: send it alone and let Salesforce reject it.
+            end = (int) (findRecordEnd(position) - position);
+            rows = 1;
+        }
+        ByteBuffer batch;
+        if (end <= limit) {
+            window.limit(end);
+            batch = window;
+        } else {
+            unmap(window);
+            batch = map(position, position + end);
+        }
+        synchronized (mapped) {
+            mapped.add(batch);
+        }
+        batchOffset = position;
+        position += end;
+        batchRows = rows;
+        return batch;
+    }
+
+    /**
+     * @return a stream with the header followed by the records of the batch.
+     */
+    InputStream openStream(ByteBuffer batch) {
+        return new SequenceInputStream(new ByteArrayInputStream(header), new ByteBufferInputStream(batch.duplicate()));
+    }
+
+    /**
+     * Unmap a batch once it is sent and will not be read again.
+     */
+    void release(ByteBuffer batch) {
+        boolean owned;
+        synchronized (mapped) {
+            owned = mapped.remove(batch);
+        }
+        if (owned) {
+            unmap(batch);
+        }
+    }
+
+    /**
+     * @return the offset just after the end of the record starting at the given offset.
+     */
+    private long findRecordEnd(long start) throws IOException {
+        boolean inQuotes = false;
+        long offset = start;
+        while (offset < size) {
+            long length = Math.min(size - offset, Integer.MAX_VALUE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            try {
+                for (int i = 0; i < length; i++) {
+                    byte b = buffer.get(i);
+                    if (b == QUOTE) {
+                        inQuotes = !inQuotes;
+                    } else if (b == LF && !inQuotes) {
+                        return offset + i + 1;
+                    }
+                }
+            } finally {
+                unmap(buffer);
+            }
+            offset += length;
+        }
+        return size;
+    }
+
+    /**
+     * @return the offset just after the last byte of the file that is not a line break.
+     */
+    private long findContentEnd(long fileSize) throws IOException {
+        long end = fileSize;
+        while (end > 0) {
+            long start = Math.max(0, end - TAIL_LENGTH);
+            MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            try {
+                for (int i = (int) (end - start) - 1; i >= 0; i--) {
+                    byte b = tail.get(i);
+                    if (b != LF && b != CR) {
+                        return start + i + 1;
+                    }
+                }
+            } finally {
+                unmap(tail);
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private ByteBuffer map(long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<ByteBuffer> remaining;
+        synchronized (mapped) {
+            remaining = new ArrayList<>(mapped);
+            mapped.clear();
+        }
+        for (ByteBuffer batch : remaining) {
+            unmap(batch);
+        }
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * Release a mapped region now instead of when it is collected. This relies on internal APIs of the platform, so
+     * the region is left to the garbage collector when they cannot be used.
+     */
+    static void unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            // Java 9 and later.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (Exception e) {
+            // Not available, try the Java 8 way.
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // Left to the garbage collector.
+        }
+    }
+
+    /**
+     * Reads the content of a buffer without copying it first.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
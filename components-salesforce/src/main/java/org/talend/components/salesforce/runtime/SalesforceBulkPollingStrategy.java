@@ -0,0 +1,30 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+/**
+ * Decides how long to wait between two checks of the state of a bulk job or batch.
+ */
+public interface SalesforceBulkPollingStrategy {
+
+    /**
+     * Start waiting for a new state, the next delay will be the shortest one.
+     */
+    void reset();
+
+    /**
+     * @param progress whether the job made some progress since the previous check.
+     * @return the number of milliseconds to wait before checking again.
+     */
+    long nextDelay(boolean progress);
+}
@@ -55,10 +55,8 @@ public class SalesforceBulkQueryInputReader extends SalesforceReader<IndexedReco
     public boolean start() throws IOException {
         try {
             executeSalesforceBulkQuery();
-            bulkResultSet = bulkRuntime.getQueryResultSet( bulkRuntime.nextResultId());
-            currentRecord = bulkResultSet.next();
-            return currentRecord !=null;
-        } catch (ConnectionException|AsyncApiException e) {
+            return nextRecord();
+        } catch (ConnectionException e) {
             // Wrap the exception in an IOException.
             throw new IOException(e);
         }
@@ -66,22 +64,26 @@ public class SalesforceBulkQueryInputReader extends SalesforceReader<IndexedReco
 
     @Override
     public boolean advance() throws IOException {
-        currentRecord = bulkResultSet.next();
-        if(currentRecord == null ){
-            String resultId = bulkRuntime.nextResultId();
-            if(resultId != null){
-                try {
-                    bulkResultSet = bulkRuntime.getQueryResultSet(resultId);
-                    currentRecord = bulkResultSet.next();
-                    return bulkResultSet.hasNext();
-                } catch (AsyncApiException | ConnectionException e) {
-                    throw new IOException(e);
-                }
-            }else{
+        return nextRecord();
+    }
+
+    /**
+     * Read the next record, moving on to the next result set of the query when the current one is exhausted.
+     */
+    private boolean nextRecord() throws IOException {
+        while (true) {
+            currentRecord = bulkResultSet == null ? null : bulkResultSet.next();
+            if (currentRecord != null) {
+                return true;
+            }
+            if (bulkResultSet != null) {
+                bulkResultSet.close();
+            }
+            bulkResultSet = bulkRuntime.nextQueryResultSet();
+            if (bulkResultSet == null) {
                 return false;
             }
         }
-        return true;
     }
 
     public BulkResult getCurrentRecord() throws NoSuchElementException {
@@ -92,8 +94,15 @@ public class SalesforceBulkQueryInputReader extends SalesforceReader<IndexedReco
     protected void executeSalesforceBulkQuery() throws IOException, ConnectionException {
         String queryText = getQueryString((TSalesforceInputProperties)properties);
         bulkRuntime =new SalesforceBulkRuntime((SalesforceSource) getCurrentSource(),container);
+        bulkRuntime.setPrefetchResultSets(((TSalesforceInputProperties) properties).prefetchResultSets.getIntValue());
         try {
-            bulkRuntime.doBulkQuery(properties.module.moduleName.getStringValue(), queryText, 30);
+            SalesforceSource source = (SalesforceSource) getCurrentSource();
+            if (source.getBulkBatchId() != null) {
+                // This source is one chunk of a query split by primary key.
+                bulkRuntime.readQueryBatch(source.getBulkJobId(), source.getBulkBatchId());
+            } else {
+                bulkRuntime.doBulkQuery(properties.module.moduleName.getStringValue(), queryText);
+            }
         } catch (AsyncApiException |InterruptedException | ConnectionException e) {
             throw new IOException(e);
         }
@@ -107,4 +116,15 @@ public class SalesforceBulkQueryInputReader extends SalesforceReader<IndexedReco
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public void close() throws IOException {
+        if (bulkResultSet != null) {
+            bulkResultSet.close();
+        }
+        if (bulkRuntime != null) {
+            bulkRuntime.close();
+            SalesforceSourceOrSink.setApiUsage(container, bulkRuntime.getApiUsage());
+        }
+    }
 }
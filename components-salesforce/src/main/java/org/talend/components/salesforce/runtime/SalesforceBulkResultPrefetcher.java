@@ -0,0 +1,186 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the result sets of a bulk query ahead of the reader.
+ *
+ * Up to {@code depth} result sets are copied to temporary files in the background while the current one is being
+ * parsed. The streams are returned in the order of the result ids, and each temporary file is deleted as soon as its
+ * stream is closed. The files not returned are deleted when the prefetcher is closed, by the download itself if it is
+ * still running.
+ */
+class SalesforceBulkResultPrefetcher implements Closeable {
+
+    /**
+     * Opens the stream of a result set.
+     */
+    interface ResultDownload {
+
+        InputStream open(String resultId) throws Exception;
+    }
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Iterator<String> resultIds;
+
+    private final ResultDownload download;
+
+    private final int depth;
+
+    private final ExecutorService executor;
+
+    private final Deque<Future<File>> pending = new ArrayDeque<>();
+
+    /** The files downloaded or being downloaded and not returned yet, guarded by itself. */
+    private final Set<File> files = new HashSet<>();
+
+    /** Set once closed, guarded by {@link #files}. */
+    private boolean closed;
+
+    SalesforceBulkResultPrefetcher(List<String> resultIds, ResultDownload download, int depth) {
+        this.resultIds = resultIds.iterator();
+        this.download = download;
+        this.depth = Math.max(1, depth);
+        this.executor = Executors.newFixedThreadPool(this.depth, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "salesforce-bulk-result-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        fill();
+    }
+
+    /**
+     * @return the stream of the next result set, or null if all of them were returned.
+     */
+    InputStream next() throws IOException {
+        Future<File> future = pending.pollFirst();
+        if (future == null) {
+            return null;
+        }
+        // Start the next download before waiting for this one.
+        fill();
+        final File file;
+        try {
+            file = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        synchronized (files) {
+            files.remove(file);
+        }
+        return new FileInputStream(file) {
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    file.delete();
+                }
+            }
+        };
+    }
+
+    private void fill() {
+        while (pending.size() < depth && resultIds.hasNext()) {
+            final String resultId = resultIds.next();
+            pending.addLast(executor.submit(new Callable<File>() {
+
+                @Override
+                public File call() throws Exception {
+                    File file = File.createTempFile("sforceBulkResult", ".csv");
+                    synchronized (files) {
+                        if (closed) {
+                            file.delete();
+                            throw new CancellationException();
+                        }
+                        files.add(file);
+                    }
+                    try (InputStream in = download.open(resultId); OutputStream out = new FileOutputStream(file)) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, n);
+                        }
+                    } catch (Exception e) {
+                        synchronized (files) {
+                            files.remove(file);
+                        }
+                        file.delete();
+                        throw e;
+                    }
+                    synchronized (files) {
+                        if (closed) {
+                            // Closed while downloading: the file may have been open when the prefetcher removed it.
+                            files.remove(file);
+                            file.delete();
+                            throw new CancellationException();
+                        }
+                    }
+                    return file;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Stop the downloads and remove the result sets that were not read.
+     */
+    @Override
+    public void close() {
+        synchronized (files) {
+            closed = true;
+            for (File file : files) {
+                file.delete();
+            }
+            files.clear();
+        }
+        for (Future<File> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        executor.shutdownNow();
+    }
+}
@@ -2,16 +2,28 @@ package org.talend.components.salesforce.runtime;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import com.sforce.async.*;
 import com.sforce.ws.ConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.talend.components.api.container.RuntimeContainer;
 import org.talend.components.salesforce.SalesforceOutputProperties;
 
@@ -22,8 +34,14 @@ import org.talend.components.salesforce.SalesforceOutputProperties;
 
 public class SalesforceBulkRuntime {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SalesforceBulkRuntime.class);
+
     private final String FILE_ENCODING = "UTF-8";
 
+    private static final String PK_CHUNKING_HEADER = "Sforce-Enable-PKChunking";
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
     private String sObjectType;
 
     private OperationEnum operation;
@@ -40,6 +58,20 @@ public class SalesforceBulkRuntime {
 
     private List<BatchInfo> batchInfoList;
 
+    /** Offset in the bulk file of the first record of each batch, used to line up the results with the base file. */
+    private List<Long> batchOffsets;
+
+    /** Number of records of each batch. */
+    private List<Integer> batchRowCounts;
+
+    /** Position of each batch in {@link #batchInfoList}, by batch id. */
+    private Map<String, Integer> batchIndexes;
+
+    /** Completed batches not returned yet by {@link #nextCompletedBatch()}. */
+    private Deque<Integer> completedBatches;
+
+    private Set<String> seenBatches;
+
     private BufferedReader br;
 
     private JobInfo job;
@@ -56,13 +88,43 @@ public class SalesforceBulkRuntime {
 
     private Iterator<String> queryResultIDs = null;
 
+    /** Result ids of the bulk query, in the order returned by Salesforce. */
+    private List<String> queryResultIdList;
+
+    private int prefetchResultSets = 2;
+
+    private SalesforceBulkResultPrefetcher resultPrefetcher;
+
     private long awaitTime = 10000L;
 
+    private long minAwaitTime = 1000L;
+
+    private SalesforceBulkPollingStrategy pollingStrategy;
+
+    private int parallelUploads = 1;
+
     private SalesforceSource sfSource;
 
+    /** Runs the calls of {@link #bulkConnection}, renewing its session and retrying transient failures. */
+    private SalesforceBulkSession bulkSession;
+
+    /** Counts the jobs and batches created on the org. */
+    private SalesforceApiGovernor governor;
+
     public SalesforceBulkRuntime(SalesforceSource sfSource, RuntimeContainer container) throws IOException {
+        this(sfSource.connect(container));
         this.sfSource = sfSource;
-        this.bulkConnection = sfSource.connect(container).bulkConnection;
+    }
+
+    /**
+     * @param ch a connection with its bulk connection.
+     */
+    SalesforceBulkRuntime(SalesforceSourceOrSink.ConnectionHolder ch) {
+        this.bulkConnection = ch.bulkConnection;
+        this.governor = ch.governor;
+        if (bulkConnection != null) {
+            this.bulkSession = new SalesforceBulkSession(bulkConnection.getConfig(), governor);
+        }
     }
 
     private void setBulkOperation(String sObjectType, String operationStr, String externalIdFieldName, String contentTypeStr,
@@ -95,11 +157,26 @@ public class SalesforceBulkRuntime {
 
     public void executeBulk(String sObjectType, String operationStr, String externalIdFieldName, String contentTypeStr,
                             String bulkFileName, int maxBytes, int maxRows) throws AsyncApiException, ConnectionException, IOException {
+        submitBulk(sObjectType, operationStr, externalIdFieldName, contentTypeStr, bulkFileName, maxBytes, maxRows);
+        awaitCompletion();
+    }
+
+    /**
+     * Create the job and upload all its batches without waiting for them to be processed. The results can then be
+     * read batch by batch as soon as they are available, using {@link #nextCompletedBatch()}.
+     */
+    public void submitBulk(String sObjectType, String operationStr, String externalIdFieldName, String contentTypeStr,
+                           String bulkFileName, int maxBytes, int maxRows) throws AsyncApiException, ConnectionException, IOException {
         setBulkOperation(sObjectType, operationStr, externalIdFieldName, contentTypeStr, bulkFileName, maxBytes, maxRows);
         job = createJob();
         batchInfoList = createBatchesFromCSVFile();
         closeJob();
-        awaitCompletion();
+        batchIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < batchInfoList.size(); i++) {
+            batchIndexes.put(batchInfoList.get(i).getId(), i);
+        }
+        completedBatches = new ArrayDeque<Integer>();
+        seenBatches = new HashSet<String>();
         prepareLog();
     }
 
@@ -111,6 +188,19 @@ public class SalesforceBulkRuntime {
         baseFileHeaderSize = baseFileHeader.size();
     }
 
+    /**
+     * Position the base file reader on the first record of a batch, so that batches can be logged in any order.
+     */
+    private void openBaseFile(int batchNum) throws IOException {
+        if (br != null) {
+            br.close();
+        }
+        FileInputStream in = new FileInputStream(bulkFileName);
+        in.getChannel().position(batchOffsets.get(batchNum));
+        br = new BufferedReader(new InputStreamReader(in, FILE_ENCODING));
+        baseFileReader = new CSVReader(br, ',');
+    }
+
     public void setConcurrencyMode(String mode) {
         concurrencyMode = ConcurrencyMode.valueOf(mode);
     }
@@ -138,25 +228,10 @@ public class SalesforceBulkRuntime {
         return job;
     }
 
-    private int countQuotes(String value) {
-        if (value == null || "".equals(value)) {
-            return 0;
-        } else {
-            char c = '\"';
-            int num = 0;
-            char[] chars = value.toCharArray();
-            for (char d : chars) {
-                if (c == d) {
-                    num++;
-                }
-            }
-            return num;
-        }
-    }
-
     /**
      * Create and upload batches using a CSV file.
-     * The file into the appropriate size batch files.
+     * The file is split into batches of the appropriate size, each batch being uploaded straight from a memory-mapped
+     * region of the file.
      *
      * @return
      * @throws IOException
@@ -165,96 +240,108 @@ public class SalesforceBulkRuntime {
      */
     private List<BatchInfo> createBatchesFromCSVFile() throws IOException, AsyncApiException, ConnectionException {
         List<BatchInfo> batchInfos = new ArrayList<BatchInfo>();
-        BufferedReader rdr = new BufferedReader(new InputStreamReader(new FileInputStream(bulkFileName), FILE_ENCODING));
-        // read the CSV header row
-        byte[] headerBytes = (rdr.readLine() + "\n").getBytes("UTF-8");
-        int headerBytesLength = headerBytes.length;
-        File tmpFile = File.createTempFile("sforceBulkAPI", ".csv");
-        // Split the CSV file into multiple batches
-        try {
-            FileOutputStream tmpOut = new FileOutputStream(tmpFile);
-            int currentBytes = 0;
-            int currentLines = 0;
-            String nextLine;
-            boolean needStart = true;
-            boolean needEnds = true;
-            while ((nextLine = rdr.readLine()) != null) {
-                int num = countQuotes(nextLine);
-                // nextLine is header or footer of the record
-                if (num % 2 == 1) {
-                    if (!needStart) {
-                        needEnds = false;
-                    } else {
-                        needStart = false;
-                    }
-                } else {
-                    // nextLine is a whole record or middle of the record
-                    if (needEnds && needStart) {
-                        needEnds = false;
-                        needStart = false;
+        batchOffsets = new ArrayList<Long>();
+        batchRowCounts = new ArrayList<Integer>();
+        try (SalesforceBulkFileSplitter splitter = new SalesforceBulkFileSplitter(new File(bulkFileName), maxBytesPerBatch,
+                maxRowsPerBatch)) {
+            if (parallelUploads <= 1) {
+                ByteBuffer batch;
+                while ((batch = splitter.nextBatch()) != null) {
+                    batchOffsets.add(splitter.getBatchOffset());
+                    batchRowCounts.add(splitter.getBatchRows());
+                    ByteBuffer content = batch;
+                    try {
+                        batchInfos.add(createBatchFromStream(job, () -> splitter.openStream(content)));
+                    } finally {
+                        splitter.release(content);
                     }
                 }
-
-                byte[] bytes = (nextLine + "\n").getBytes("UTF-8");
-
-                // Create a new batch when our batch size limit is reached
-                if (currentBytes + bytes.length > maxBytesPerBatch || currentLines > maxRowsPerBatch) {
-                    createBatch(tmpOut, tmpFile, batchInfos);
-                    currentBytes = 0;
-                    currentLines = 0;
-                }
-                if (currentBytes == 0) {
-                    tmpOut = new FileOutputStream(tmpFile);
-                    tmpOut.write(headerBytes);
-                    currentBytes = headerBytesLength;
-                    currentLines = 1;
-                }
-                tmpOut.write(bytes);
-                currentBytes += bytes.length;
-                if (!needStart && !needEnds) {
-                    currentLines++;
-                    needStart = true;
-                    needEnds = true;
-                }
-            }
-            // Finished processing all rows
-            // Create a final batch for any remaining data
-            rdr.close();
-            if (currentLines > 1) {
-                createBatch(tmpOut, tmpFile, batchInfos);
+            } else {
+                createBatchesInParallel(splitter, batchInfos);
             }
-        } finally {
-            tmpFile.delete();
         }
         return batchInfos;
     }
 
     /**
-     *  Create a batch by uploading the contents of the file.
-     *  This closes the output stream.
-     *
-     * @param tmpOut
-     * The output stream used to write the CSV data for a single batch.
-     * @param tmpFile
-     * The file associated with the above stream.
-     * @param batchInfos
-     * The batch info for the newly created batch is added to this list.
-     *
-     * @throws IOException
-     * @throws AsyncApiException
-     * @throws ConnectionException
+     * Upload the batches on a bounded pool of threads. The next batch is located in the file while the previous ones
+     * are being uploaded, and the BatchInfo are added in the order of the file so that {@link #getBatchLog(int)} can
+     * still line up the results with the base file.
      */
-    private void createBatch(FileOutputStream tmpOut, File tmpFile, List<BatchInfo> batchInfos) throws IOException,
+    private void createBatchesInParallel(SalesforceBulkFileSplitter splitter, List<BatchInfo> batchInfos) throws IOException,
             AsyncApiException, ConnectionException {
-        tmpOut.flush();
-        tmpOut.close();
-        FileInputStream tmpInputStream = new FileInputStream(tmpFile);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelUploads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "salesforce-bulk-upload-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        Deque<Future<BatchInfo>> pending = new ArrayDeque<>();
         try {
-            BatchInfo batchInfo = createBatchFromStream(job, tmpInputStream);
-            // System.out.println(batchInfo);
-            batchInfos.add(batchInfo);
+            ByteBuffer batch;
+            while ((batch = splitter.nextBatch()) != null) {
+                batchOffsets.add(splitter.getBatchOffset());
+                batchRowCounts.add(splitter.getBatchRows());
+                if (pending.size() >= parallelUploads * 2) {
+                    batchInfos.add(getUploadedBatch(pending.removeFirst()));
+                }
+                final ByteBuffer content = batch;
+                pending.addLast(executor.submit(new Callable<BatchInfo>() {
+
+                    @Override
+                    public BatchInfo call() throws Exception {
+                        try {
+                            return createBatchFromStream(job, () -> splitter.openStream(content));
+                        } finally {
+                            splitter.release(content);
+                        }
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                batchInfos.add(getUploadedBatch(pending.removeFirst()));
+            }
         } finally {
-            tmpInputStream.close();
+            for (Future<BatchInfo> future : pending) {
+                future.cancel(false);
+            }
+            executor.shutdown();
+            // The splitter unmaps its batches once closed, no upload may still be reading them by then.
+            awaitUploads(executor);
+        }
+    }
+
+    private static void awaitUploads(ExecutorService executor) {
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BatchInfo getUploadedBatch(Future<BatchInfo> future) throws IOException, AsyncApiException, ConnectionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AsyncApiException) {
+                throw (AsyncApiException) cause;
+            } else if (cause instanceof ConnectionException) {
+                throw (ConnectionException) cause;
+            }
+            throw new IOException(cause);
         }
     }
 
@@ -269,12 +356,24 @@ public class SalesforceBulkRuntime {
         closeJob.setId(job.getId());
         closeJob.setState(JobStateEnum.Closed);
         updateJob(closeJob);
+        LOG.debug("Salesforce API usage: {}", getApiUsage());
+    }
+
+    /**
+     * @return the API usage of the org of the job.
+     */
+    SalesforceApiGovernor.Usage getApiUsage() {
+        return governor.getUsage();
     }
 
     public void setAwaitTime(long awaitTime) {
         this.awaitTime = awaitTime;
     }
 
+    public void setParallelUploads(int parallelUploads) {
+        this.parallelUploads = parallelUploads;
+    }
+
     /**
      * Wait for a job to complete by polling the Bulk API.
      *
@@ -282,42 +381,48 @@ public class SalesforceBulkRuntime {
      * @throws ConnectionException
      */
     private void awaitCompletion() throws AsyncApiException, ConnectionException {
-        long sleepTime = 0L;
-        Set<String> incomplete = new HashSet<String>();
-        for (BatchInfo bi : batchInfoList) {
-            incomplete.add(bi.getId());
-        }
-        while (!incomplete.isEmpty()) {
-            try {
-                Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-            }
-            // System.out.println("Awaiting results..." + incomplete.size());
-            sleepTime = awaitTime;
-            BatchInfo[] statusList = getBatchInfoList(job.getId()).getBatchInfo();
-            for (BatchInfo b : statusList) {
-                if (b.getState() == BatchStateEnum.Completed || b.getState() == BatchStateEnum.Failed) {
-                    incomplete.remove(b.getId());
-                }
+        SalesforceBulkPollingStrategy polling = getPollingStrategy();
+        polling.reset();
+        int processed = 0;
+        while (true) {
+            // The job counters are enough to know when all the batches are done, no need to list them.
+            int done = countProcessedBatches();
+            if (done >= batchInfoList.size()) {
+                return;
             }
+            await(polling.nextDelay(done > processed));
+            processed = done;
         }
     }
 
+    private int countProcessedBatches() throws AsyncApiException, ConnectionException {
+        JobInfo status = getJobStatus(job.getId());
+        return status.getNumberBatchesCompleted() + status.getNumberBatchesFailed();
+    }
+
+    private void await(long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+        }
+    }
+
+    public void setMinAwaitTime(long minAwaitTime) {
+        this.minAwaitTime = minAwaitTime;
+    }
+
     /**
-     * Get result from the reader
-     *
-     * @return
-     * @throws IOException
+     * Replace the default exponential backoff used to wait for the job and batches.
      */
-    private BulkResult getBaseFileRow() throws IOException {
-        BulkResult dataInfo = new BulkResult();
-        List<String> row = null;
-        if ((row = baseFileReader.nextRecord())!=null) {
-            for (int i = 0; i < row.size(); i++) {
-                dataInfo.setValue(baseFileHeader.get(i), row.get(i));
-            }
+    public void setPollingStrategy(SalesforceBulkPollingStrategy pollingStrategy) {
+        this.pollingStrategy = pollingStrategy;
+    }
+
+    private SalesforceBulkPollingStrategy getPollingStrategy() {
+        if (pollingStrategy == null) {
+            pollingStrategy = new ExponentialBackoffPollingStrategy(minAwaitTime, awaitTime);
         }
-        return dataInfo;
+        return pollingStrategy;
     }
 
     /**
@@ -332,62 +437,198 @@ public class SalesforceBulkRuntime {
     public List<BulkResult> getBatchLog(int batchNum) throws AsyncApiException, IOException, ConnectionException {
         // batchInfoList was populated when batches were created and submitted
         List<BulkResult> resultInfoList = new ArrayList<BulkResult>();
-        BulkResult resultInfo;
+        BulkResultSet resultSet = getBatchLogResultSet(batchNum);
+        try {
+            BulkResult resultInfo;
+            while ((resultInfo = resultSet.next()) != null) {
+                resultInfoList.add(resultInfo);
+            }
+        } finally {
+            resultSet.close();
+        }
+        return resultInfoList;
+    }
+
+    /**
+     * Open the results of a batch as a stream. Each row is read from the result of the batch together with the matching
+     * record of the base file, so only one row is held in memory whatever the size of the batch.
+     *
+     * @param batchNum
+     * @return
+     * @throws AsyncApiException
+     * @throws IOException
+     * @throws ConnectionException
+     */
+    public BulkResultSet getBatchLogResultSet(int batchNum) throws AsyncApiException, IOException, ConnectionException {
         BatchInfo b = batchInfoList.get(batchNum);
-        CSVReader rdr = new CSVReader(getBatchResultStream(job.getId(), b.getId()));
+        openBaseFile(batchNum);
+        InputStream resultStream = getBatchResultStream(job.getId(), b.getId());
+        CSVReader rdr = new CSVReader(resultStream);
 
         List<String> resultHeader = rdr.nextRecord();
-        int resultCols = resultHeader.size();
-        List<String> row;
-        while ((row = rdr.nextRecord()) != null) {
-            resultInfo = new BulkResult();
-            resultInfo.copyValues(getBaseFileRow());
-            for (int i = 0; i < resultCols; i++) {
-                resultInfo.setValue(resultHeader.get(i), row.get(i));
-            }
-            resultInfoList.add(resultInfo);
+        if (resultHeader == null) {
+            resultHeader = Collections.emptyList();
         }
+        // The result columns come after the base file columns, and win over them when they have the same name.
+        List<String> columns = new ArrayList<String>(baseFileHeaderSize + resultHeader.size());
+        columns.addAll(baseFileHeader);
+        columns.addAll(resultHeader);
+        return new BatchLogResultSet(rdr, new BulkResultHeader(columns), resultStream);
+    }
 
-        return resultInfoList;
+    /**
+     * @return the number of records sent in a batch.
+     */
+    public int getBatchRowCount(int batchNum) {
+        return batchRowCounts.get(batchNum);
     }
 
     public int getBatchCount() {
-        return batchInfoList.size();
+        return batchInfoList == null ? 0 : batchInfoList.size();
     }
 
-    public void doBulkQuery(String moduleName, String queryStatement, int secToWait) throws AsyncApiException,
-            InterruptedException, ConnectionException {
-        job = new JobInfo();
-        job.setObject(moduleName);
-        job.setOperation(OperationEnum.query);
-        if (concurrencyMode != null) {
-            job.setConcurrencyMode(concurrencyMode);
+    /**
+     * Wait until a batch of the job submitted with {@link #submitBulk} is processed.
+     *
+     * @return the number of a batch that is Completed or Failed and was not returned yet, or -1 if all the batches have
+     * already been returned.
+     * @throws AsyncApiException
+     * @throws ConnectionException
+     */
+    public int nextCompletedBatch() throws AsyncApiException, ConnectionException {
+        SalesforceBulkPollingStrategy polling = getPollingStrategy();
+        polling.reset();
+        while (completedBatches.isEmpty() && seenBatches.size() < batchInfoList.size()) {
+            // Only list the batches when the job counters show that some more are done.
+            if (countProcessedBatches() > seenBatches.size()) {
+                BatchInfo[] statusList = getBatchInfoList(job.getId()).getBatchInfo();
+                for (BatchInfo b : statusList) {
+                    if ((b.getState() == BatchStateEnum.Completed || b.getState() == BatchStateEnum.Failed)
+                            && seenBatches.add(b.getId())) {
+                        completedBatches.add(batchIndexes.get(b.getId()));
+                    }
+                }
+            }
+            if (completedBatches.isEmpty()) {
+                await(polling.nextDelay(false));
+            }
         }
-        job.setContentType(ContentType.CSV);
-        job = createJob(job);
+        Integer batchNum = completedBatches.poll();
+        return batchNum == null ? -1 : batchNum;
+    }
 
-        job = getJobStatus(job.getId());
+    public void doBulkQuery(String moduleName, String queryStatement) throws AsyncApiException,
+            InterruptedException, ConnectionException {
+        job = createQueryJob(moduleName);
         batchInfoList = new ArrayList<BatchInfo>();
         BatchInfo info = null;
-        ByteArrayInputStream bout = new ByteArrayInputStream(queryStatement.getBytes());
-        info = createBatchFromStream(job, bout);
+        byte[] query = queryStatement.getBytes();
+        info = createBatchFromStream(job, () -> new ByteArrayInputStream(query));
 
+        info = awaitQueryBatch(info.getId());
+        batchInfoList.add(info);
+        closeJob();
+    }
+
+    /**
+     * Submit a bulk query with primary key chunking enabled: Salesforce splits the query into one batch per range of
+     * {@code chunkSize} record ids, and each batch can then be read on its own with {@link #readQueryBatch}.
+     *
+     * @return the ids of the chunk batches, in the order of the record ids, or null if the module does not support PK
+     * chunking.
+     */
+    public List<String> submitChunkedBulkQuery(String moduleName, String queryStatement, int chunkSize)
+            throws AsyncApiException, InterruptedException, ConnectionException {
+        bulkConnection.addHeader(PK_CHUNKING_HEADER, "chunkSize=" + chunkSize);
+        try {
+            job = createQueryJob(moduleName);
+        } finally {
+            // The header is sent with every request of the connection, and there is no way to remove it.
+            bulkConnection.addHeader(PK_CHUNKING_HEADER, "false");
+        }
+        byte[] query = queryStatement.getBytes();
+        BatchInfo info = createBatchFromStream(job, () -> new ByteArrayInputStream(query));
+
+        SalesforceBulkPollingStrategy polling = getPollingStrategy();
+        polling.reset();
         while (true) {
-            Thread.sleep(secToWait * 1000); // default is 30 sec
+            Thread.sleep(polling.nextDelay(false));
             info = getBatchInfo(job.getId(), info.getId());
+            if (info.getState() == BatchStateEnum.NotProcessed) {
+                // The chunk batches are all created once the original batch is marked as not processed.
+                break;
+            } else if (info.getState() == BatchStateEnum.Completed) {
+                // The query was run as a single batch.
+                closeJob();
+                return Collections.singletonList(info.getId());
+            } else if (info.getState() == BatchStateEnum.Failed) {
+                LOG.info("PK chunking not available for {}: {}", moduleName, info.getStateMessage());
+                closeJob();
+                return null;
+            } else {
+                LOG.debug("Waiting for bulk query chunks: {}", info);
+            }
+        }
+        List<String> chunks = new ArrayList<String>();
+        for (BatchInfo b : getBatchInfoList(job.getId()).getBatchInfo()) {
+            if (!b.getId().equals(info.getId())) {
+                chunks.add(b.getId());
+            }
+        }
+        closeJob();
+        return chunks;
+    }
+
+    /**
+     * Read the results of one batch of a bulk query submitted by {@link #submitChunkedBulkQuery}, waiting for the batch
+     * to complete.
+     */
+    public void readQueryBatch(String jobId, String batchId) throws AsyncApiException, InterruptedException,
+            ConnectionException {
+        job = new JobInfo();
+        job.setId(jobId);
+        batchInfoList = new ArrayList<BatchInfo>();
+        batchInfoList.add(awaitQueryBatch(batchId));
+    }
+
+    public String getJobId() {
+        return job.getId();
+    }
+
+    private JobInfo createQueryJob(String moduleName) throws AsyncApiException, ConnectionException {
+        JobInfo queryJob = new JobInfo();
+        queryJob.setObject(moduleName);
+        queryJob.setOperation(OperationEnum.query);
+        if (concurrencyMode != null) {
+            queryJob.setConcurrencyMode(concurrencyMode);
+        }
+        queryJob.setContentType(ContentType.CSV);
+        queryJob = createJob(queryJob);
+
+        return getJobStatus(queryJob.getId());
+    }
+
+    /**
+     * Wait for a query batch to complete and keep the ids of its result sets.
+     */
+    private BatchInfo awaitQueryBatch(String batchId) throws AsyncApiException, InterruptedException, ConnectionException {
+        SalesforceBulkPollingStrategy polling = getPollingStrategy();
+        polling.reset();
+        while (true) {
+            Thread.sleep(polling.nextDelay(false));
+            BatchInfo info = getBatchInfo(job.getId(), batchId);
 
             if (info.getState() == BatchStateEnum.Completed) {
                 QueryResultList list = getQueryResultList(job.getId(), info.getId());
-                queryResultIDs = new HashSet<String>(Arrays.asList(list.getResult())).iterator();
-                break;
+                queryResultIdList = new ArrayList<String>(new LinkedHashSet<String>(Arrays.asList(list.getResult())));
+                queryResultIDs = queryResultIdList.iterator();
+                return info;
             } else if (info.getState() == BatchStateEnum.Failed) {
                 throw new RuntimeException("-------------- failed ----------" + info);
             } else {
-                System.out.println("-------------- waiting ----------" + info);
+                LOG.debug("Waiting for bulk query batch: {}", info);
             }
         }
-        batchInfoList.add(info);
-        closeJob();
     }
 
     public InputStream getQueryResultStream(String resultId) throws AsyncApiException, IOException, ConnectionException {
@@ -415,128 +656,111 @@ public class SalesforceBulkRuntime {
     }
 
     public BulkResultSet getQueryResultSet(String resultId) throws AsyncApiException, IOException, ConnectionException {
-        baseFileReader = new CSVReader(new BufferedReader(new InputStreamReader(
-                getQueryResultStream(job.getId(), batchInfoList.get(0).getId(), resultId), FILE_ENCODING)), ',');
+        BufferedReader resultReader = new BufferedReader(new InputStreamReader(
+                getQueryResultStream(job.getId(), batchInfoList.get(0).getId(), resultId), FILE_ENCODING));
+        baseFileReader = new CSVReader(resultReader, ',');
 
         baseFileHeader = baseFileReader.nextRecord();
         baseFileHeaderSize = baseFileHeader.size();
-        return new BulkResultSet(baseFileReader ,baseFileHeader);
+        return new BulkResultSet(baseFileReader, new BulkResultHeader(baseFileHeader), resultReader);
     }
 
-    protected JobInfo createJob(JobInfo job) throws AsyncApiException, ConnectionException {
-        try {
-            return bulkConnection.createJob(job);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return createJob(job);
-            }
-            throw sfException;
+    /**
+     * Set how many result sets of a bulk query are downloaded ahead of the one being read.
+     */
+    public void setPrefetchResultSets(int prefetchResultSets) {
+        this.prefetchResultSets = prefetchResultSets;
+    }
+
+    /**
+     * Open the next result set of the bulk query. The following result sets are downloaded in the background while
+     * this one is read.
+     *
+     * @return the next result set, or null if all of them were returned.
+     */
+    public BulkResultSet nextQueryResultSet() throws IOException {
+        if (queryResultIdList == null) {
+            return null;
+        }
+        if (resultPrefetcher == null) {
+            final String jobId = job.getId();
+            final String batchId = batchInfoList.get(0).getId();
+            resultPrefetcher = new SalesforceBulkResultPrefetcher(queryResultIdList,
+                    new SalesforceBulkResultPrefetcher.ResultDownload() {
+
+                        @Override
+                        public InputStream open(String resultId) throws Exception {
+                            return getQueryResultStream(jobId, batchId, resultId);
+                        }
+                    }, prefetchResultSets);
+        }
+        InputStream in = resultPrefetcher.next();
+        if (in == null) {
+            return null;
+        }
+        BufferedReader resultReader = new BufferedReader(new InputStreamReader(in, FILE_ENCODING));
+        baseFileReader = new CSVReader(resultReader, ',');
+        baseFileHeader = baseFileReader.nextRecord();
+        if (baseFileHeader == null) {
+            baseFileHeader = Collections.emptyList();
         }
+        baseFileHeaderSize = baseFileHeader.size();
+        return new BulkResultSet(baseFileReader, new BulkResultHeader(baseFileHeader), resultReader);
     }
 
-    protected BatchInfo createBatchFromStream(JobInfo job, InputStream input) throws AsyncApiException,
+    protected JobInfo createJob(JobInfo job) throws AsyncApiException, ConnectionException {
+        JobInfo created = bulkSession.executeUpdate(() -> bulkConnection.createJob(job));
+        governor.jobCreated();
+        return created;
+    }
+
+    /**
+     * Upload a batch. The content is opened again for each attempt, since an attempt may consume part of it.
+     */
+    protected BatchInfo createBatchFromStream(JobInfo job, Supplier<InputStream> content) throws AsyncApiException,
             ConnectionException {
-        try {
-            return bulkConnection.createBatchFromStream(job, input);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return createBatchFromStream(job, input);
-            }
-            throw sfException;
-        }
+        BatchInfo created = bulkSession.executeUpdate(() -> bulkConnection.createBatchFromStream(job, content.get()));
+        governor.batchCreated();
+        return created;
     }
 
     protected JobInfo updateJob(JobInfo job) throws AsyncApiException, ConnectionException {
-        try {
-            return bulkConnection.updateJob(job);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return updateJob(job);
-            }
-            throw sfException;
-        }
+        return bulkSession.executeUpdate(() -> bulkConnection.updateJob(job));
     }
 
     protected BatchInfoList getBatchInfoList(String jobID) throws AsyncApiException, ConnectionException {
-        try {
-            return bulkConnection.getBatchInfoList(jobID);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return getBatchInfoList(jobID);
-            }
-            throw sfException;
-        }
+        return bulkSession.execute(() -> bulkConnection.getBatchInfoList(jobID));
     }
 
     protected InputStream getBatchResultStream(String jobID, String batchID) throws AsyncApiException, ConnectionException {
-        try {
-            return bulkConnection.getBatchResultStream(jobID, batchID);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return getBatchResultStream(jobID, batchID);
-            }
-            throw sfException;
-        }
+        return bulkSession.execute(() -> bulkConnection.getBatchResultStream(jobID, batchID));
     }
 
     protected JobInfo getJobStatus(String jobID) throws AsyncApiException, ConnectionException {
-        try {
-            return bulkConnection.getJobStatus(jobID);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return getJobStatus(jobID);
-            }
-            throw sfException;
-        }
+        return bulkSession.execute(() -> bulkConnection.getJobStatus(jobID));
     }
 
     protected BatchInfo getBatchInfo(String jobID, String batchID) throws AsyncApiException, ConnectionException {
-        try {
-            return bulkConnection.getBatchInfo(jobID, batchID);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return getBatchInfo(jobID, batchID);
-            }
-            throw sfException;
-        }
+        return bulkSession.execute(() -> bulkConnection.getBatchInfo(jobID, batchID));
     }
 
     public void close() throws IOException {
         if(br!=null){
             br.close();
         }
+        if (resultPrefetcher != null) {
+            resultPrefetcher.close();
+            resultPrefetcher = null;
+        }
     }
 
     protected QueryResultList getQueryResultList(String jobID, String batchID) throws AsyncApiException, ConnectionException {
-        try {
-            return bulkConnection.getQueryResultList(jobID, batchID);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return getQueryResultList(jobID, batchID);
-            }
-            throw sfException;
-        }
+        return bulkSession.execute(() -> bulkConnection.getQueryResultList(jobID, batchID));
     }
 
     protected InputStream getQueryResultStream(String jobID, String batchID, String resultID) throws AsyncApiException,
             ConnectionException {
-        try {
-            return bulkConnection.getQueryResultStream(jobID, batchID, resultID);
-        } catch (AsyncApiException sfException) {
-            if (AsyncExceptionCode.InvalidSessionId.equals(sfException.getExceptionCode())) {
-                sfSource.renewSession(bulkConnection.getConfig());
-                return getQueryResultStream(jobID, batchID, resultID);
-            }
-            throw sfException;
-        }
+        return bulkSession.execute(() -> bulkConnection.getQueryResultStream(jobID, batchID, resultID));
     }
 
     public String nextResultId(){
@@ -550,12 +774,18 @@ public class SalesforceBulkRuntime {
     class BulkResultSet {
 
         CSVReader reader;
-        List<String> header;
+        BulkResultHeader header;
+        Closeable source;
         boolean hashNext = true;
 
         public BulkResultSet(CSVReader reader, List<String> header) {
+            this(reader, new BulkResultHeader(header), null);
+        }
+
+        BulkResultSet(CSVReader reader, BulkResultHeader header, Closeable source) {
             this.reader = reader;
             this.header = header;
+            this.source = source;
         }
 
         public BulkResult next() throws IOException {
@@ -564,10 +794,7 @@ public class SalesforceBulkRuntime {
             List<String> row = null;
 
             if ((row = reader.nextRecord()) != null) {
-                result = new BulkResult();
-                for (int i = 0; i < this.header.size(); i++) {
-                    result.setValue(header.get(i), row.get(i));
-                }
+                result = createResult(row);
             }
             if(result == null){
                 hashNext = false;
@@ -575,31 +802,109 @@ public class SalesforceBulkRuntime {
             return result;
         }
 
+        protected BulkResult createResult(List<String> row) throws IOException {
+            // The row read is not shared with the next ones, it can back the result without being copied.
+            return new BulkResult(header, row);
+        }
+
         public boolean hasNext(){
             return hashNext;
         }
 
+        /**
+         * Release the stream the results are read from.
+         */
+        public void close() throws IOException {
+            if (source != null) {
+                source.close();
+            }
+        }
+
     }
 
-    class BulkResult{
-        Map<String,Object> values;
-        public BulkResult() {
-            values = new HashMap<String,Object>();
-        }
-        public void setValue(String field , Object vlaue){
-            values.put(field,vlaue);
-        }
-        public Object getValue(String fieldName){
-            return values.get(fieldName);
+    /**
+     * The results of a batch, each one joined with the record of the base file it comes from.
+     */
+    class BatchLogResultSet extends BulkResultSet {
+
+        BatchLogResultSet(CSVReader reader, BulkResultHeader header, Closeable source) {
+            super(reader, header, source);
         }
-        public void copyValues(BulkResult result){
-            if(result == null){
-                return;
-            }else{
-                for(String key:result.values.keySet()){
-                    values.put(key,result.values.get(key));
+
+        @Override
+        protected BulkResult createResult(List<String> row) throws IOException {
+            String[] values = new String[header.size()];
+            List<String> baseRow = baseFileReader.nextRecord();
+            if (baseRow != null) {
+                for (int i = 0; i < baseRow.size() && i < baseFileHeaderSize; i++) {
+                    values[i] = baseRow.get(i);
                 }
             }
+            for (int i = 0; i < row.size() && baseFileHeaderSize + i < values.length; i++) {
+                values[baseFileHeaderSize + i] = row.get(i);
+            }
+            return new BulkResult(header, Arrays.asList(values));
+        }
+    }
+
+    /**
+     * Positions of the columns of a result stream, shared by all the rows read from it.
+     */
+    static class BulkResultHeader {
+
+        private final Map<String, Integer> indexes;
+
+        private final int size;
+
+        BulkResultHeader(List<String> columns) {
+            size = columns.size();
+            indexes = new HashMap<String, Integer>(columns.size() * 2);
+            for (int i = 0; i < size; i++) {
+                indexes.put(columns.get(i), i);
+            }
+        }
+
+        /**
+         * @return the position of the column, or -1 if there is no such column.
+         */
+        public int indexOf(String column) {
+            Integer index = indexes.get(column);
+            return index == null ? -1 : index;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A row of results. Each row has its own values, since the callers may keep the rows of a whole batch, as
+     * {@link SalesforceBulkRuntime#getBatchLog(int)} does.
+     */
+    static class BulkResult {
+
+        private final BulkResultHeader header;
+
+        private final List<String> values;
+
+        BulkResult(BulkResultHeader header, List<String> values) {
+            this.header = header;
+            this.values = values;
+        }
+
+        public BulkResultHeader getHeader() {
+            return header;
+        }
+
+        public Object getValue(String fieldName) {
+            return getValue(header.indexOf(fieldName));
+        }
+
+        /**
+         * @return the value at the given position of the header, null for a missing column.
+         */
+        public Object getValue(int index) {
+            return index < 0 || index >= values.size() ? null : values.get(index);
         }
     }
 
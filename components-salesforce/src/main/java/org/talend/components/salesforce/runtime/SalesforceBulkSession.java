@@ -0,0 +1,212 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+/**
+ * Runs the calls made on a bulk connection, keeping its session valid and retrying the calls that failed for a
+ * transient reason.
+ *
+ * A session that was not used for longer than the shortest session timeout of Salesforce is renewed before the next
+ * call, rather than after a failed one. When a call is rejected because its session expired, the session is renewed
+ * once, and the calls rejected for the same session at the same time wait for that renewal instead of renewing it
+ * again. The calls that only read the state of the org and failed on an I/O error are attempted again a few times,
+ * waiting longer after each failure. The calls that change the org, such as the creation of a job or a batch, are only
+ * attempted again when they could not connect: a request that was sent may have been processed even though its
+ * response was lost, and sending it again would then create a duplicate.
+ */
+class SalesforceBulkSession {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SalesforceBulkSession.class);
+
+    /** Number of attempts of a call that fails on transient errors. */
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * A call of the bulk connection.
+     */
+    interface Call<T> {
+
+        T call() throws AsyncApiException, ConnectionException;
+    }
+
+    private final ConnectorConfig config;
+
+    private final SalesforceApiGovernor governor;
+
+    private final long maxIdle;
+
+    private final int maxAttempts;
+
+    private final long minRetryDelay;
+
+    private final long maxRetryDelay;
+
+    /** The last time the session was known to be valid, guarded by this. */
+    private long lastUsed;
+
+    /**
+     * @param config the configuration of the bulk connection, with a session renewer.
+     * @param governor the governor of the org of the connection, each attempt of a call waiting for one of its permits.
+     */
+    SalesforceBulkSession(ConnectorConfig config, SalesforceApiGovernor governor) {
+        this(config, governor, SalesforceSessionPool.DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_ATTEMPTS, 1000L, 8000L);
+    }
+
+    /**
+     * @param maxIdle how long the session can stay unused before it is renewed, in milliseconds.
+     * @param maxAttempts how many times a call failing on transient errors is attempted.
+     * @param minRetryDelay the delay before the second attempt, in milliseconds.
+     * @param maxRetryDelay the longest delay between two attempts, in milliseconds.
+     */
+    SalesforceBulkSession(ConnectorConfig config, SalesforceApiGovernor governor, long maxIdle, int maxAttempts,
+            long minRetryDelay, long maxRetryDelay) {
+        this.config = config;
+        this.governor = governor;
+        this.maxIdle = maxIdle;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.minRetryDelay = minRetryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Run a call that only reads the state of the org, such as the status of a job or the results of a batch.
+     */
+    <T> T execute(Call<T> call) throws AsyncApiException, ConnectionException {
+        return execute(call, true);
+    }
+
+    /**
+     * Run a call that changes the org, such as the creation of a job or a batch.
+     */
+    <T> T executeUpdate(Call<T> call) throws AsyncApiException, ConnectionException {
+        return execute(call, false);
+    }
+
+    private <T> T execute(Call<T> call, boolean idempotent) throws AsyncApiException, ConnectionException {
+        SalesforceBulkPollingStrategy backoff = null;
+        boolean renewed = false;
+        int failures = 0;
+        while (true) {
+            String sessionId = beforeCall();
+            try {
+                T result;
+                governor.acquire();
+                try {
+                    result = call.call();
+                } finally {
+                    governor.release();
+                }
+                synchronized (this) {
+                    lastUsed = System.currentTimeMillis();
+                }
+                return result;
+            } catch (AsyncApiException e) {
+                if (!renewed && AsyncExceptionCode.InvalidSessionId.equals(e.getExceptionCode())) {
+                    // Only renewed once: a session rejected right after its renewal is not a matter of expiry. The
+                    // request was rejected, so it can be sent again even if it changes the org.
+                    renew(sessionId);
+                    renewed = true;
+                    continue;
+                }
+                if (!isRetryable(e, idempotent) || ++failures >= maxAttempts) {
+                    throw e;
+                }
+                LOG.debug("Bulk API call failed, attempt {} of {}", failures, maxAttempts, e);
+            } catch (ConnectionException e) {
+                if (!isRetryable(e, idempotent) || ++failures >= maxAttempts) {
+                    throw e;
+                }
+                LOG.debug("Bulk API call failed, attempt {} of {}", failures, maxAttempts, e);
+            }
+            if (backoff == null) {
+                backoff = new ExponentialBackoffPollingStrategy(minRetryDelay, maxRetryDelay);
+            }
+            try {
+                Thread.sleep(backoff.nextDelay(false));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectionException("Interrupted while waiting to retry a Bulk API call", e);
+            }
+        }
+    }
+
+    /**
+     * @return the session to make the call with, renewed first if it was idle for too long.
+     */
+    private synchronized String beforeCall() throws ConnectionException {
+        if (System.currentTimeMillis() - lastUsed > maxIdle) {
+            LOG.debug("Renewing the idle bulk session");
+            renewLocked(config.getSessionId());
+        }
+        return config.getSessionId();
+    }
+
+    /**
+     * Renew the session, unless it is no longer the one that was rejected.
+     */
+    synchronized void renew(String rejected) throws ConnectionException {
+        renewLocked(rejected);
+    }
+
+    private void renewLocked(String rejected) throws ConnectionException {
+        String current = config.getSessionId();
+        if (current == null || current.equals(rejected)) {
+            config.getSessionRenewer().renewSession(config);
+        }
+        lastUsed = System.currentTimeMillis();
+    }
+
+    private static boolean isRetryable(Exception e, boolean idempotent) {
+        return idempotent ? isTransient(e) : isConnectFailure(e);
+    }
+
+    /**
+     * @return true if the failure comes from an I/O error, such as a timeout or a connection reset.
+     */
+    static boolean isTransient(Exception e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the failure happened before the request could be sent, because the connection to the server
+     * could not be opened.
+     */
+    static boolean isConnectFailure(Exception e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
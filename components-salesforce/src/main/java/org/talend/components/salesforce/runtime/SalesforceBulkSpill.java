@@ -0,0 +1,218 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
+import org.talend.components.salesforce.SalesforceOutputProperties.OutputAction;
+
+import com.csvreader.CsvWriter;
+import com.sforce.async.AsyncApiException;
+import com.sforce.ws.ConnectionException;
+
+/**
+ * Stages the records of a writer in a CSV file, to load them with a Bulk API job once they are all written.
+ *
+ * The columns of the file are the fields of the first record that are also in the module, or only the Id for a delete.
+ * A null value is left empty so that the field is not changed, as in the SOAP calls that only send the non null values.
+ */
+class SalesforceBulkSpill implements Closeable {
+
+    private static final String ID = "Id";
+
+    /** Largest batch the Bulk API accepts. */
+    static final int MAX_BATCH_BYTES = 10 * 1024 * 1024;
+
+    static final int MAX_BATCH_ROWS = 10000;
+
+    /**
+     * Handles the result of one record loaded by the job, in the order the records were written.
+     */
+    interface ResultHandler {
+
+        void handle(boolean success, String error) throws IOException;
+    }
+
+    private final File file;
+
+    private final OutputAction action;
+
+    private final Schema targetSchema;
+
+    private final SimpleDateFormat dateFormat;
+
+    private String[] columns;
+
+    private CsvWriter csvWriter;
+
+    private Schema inputSchema;
+
+    /** Positions of the columns in the input records, or -1 for a column that is not in their schema. */
+    private int[] positions;
+
+    private int count;
+
+    /**
+     * @param targetSchema the schema of the module.
+     */
+    SalesforceBulkSpill(OutputAction action, Schema targetSchema) throws IOException {
+        this.action = action;
+        this.targetSchema = targetSchema;
+        dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // Deleted on close rather than on exit, so that the JVM does not keep the name of every file it ever spilled.
+        file = File.createTempFile("salesforce-bulk", ".csv");
+        try {
+            csvWriter = new CsvWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), ',');
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    void write(IndexedRecord input) throws IOException {
+        if (action == OutputAction.DELETE) {
+            throw new IllegalStateException("The records to delete are written by their Id");
+        }
+        if (columns == null) {
+            columns = getColumns(input.getSchema());
+            csvWriter.writeRecord(columns);
+        }
+        bind(input.getSchema());
+        String[] values = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Object value = positions[i] < 0 ? null : input.get(positions[i]);
+            values[i] = value == null ? "" : format(value);
+        }
+        csvWriter.writeRecord(values);
+        count++;
+    }
+
+    /**
+     * Write the Id of a record to delete.
+     */
+    void writeId(String id) throws IOException {
+        if (columns == null) {
+            columns = new String[] { ID };
+            csvWriter.writeRecord(columns);
+        }
+        csvWriter.writeRecord(new String[] { id });
+        count++;
+    }
+
+    /**
+     * @return the number of records written.
+     */
+    int getCount() {
+        return count;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Complete the file once all the records are written.
+     */
+    void finish() throws IOException {
+        if (csvWriter != null) {
+            csvWriter.close();
+            csvWriter = null;
+        }
+    }
+
+    /**
+     * Load the records with a job of the bulk runtime, then give the result of each record to the handler.
+     *
+     * @param externalIdFieldName the external id of an upsert.
+     */
+    void load(SalesforceBulkRuntime runtime, String moduleName, String action, String externalIdFieldName,
+            ResultHandler handler) throws IOException {
+        finish();
+        try {
+            runtime.executeBulk(moduleName, action, externalIdFieldName, "csv", file.getPath(), MAX_BATCH_BYTES,
+                    MAX_BATCH_ROWS);
+            for (int i = 0; i < runtime.getBatchCount(); i++) {
+                SalesforceBulkRuntime.BulkResultSet results = runtime.getBatchLogResultSet(i);
+                try {
+                    SalesforceBulkRuntime.BulkResult result;
+                    while ((result = results.next()) != null) {
+                        handler.handle("true".equalsIgnoreCase(String.valueOf(result.getValue("Success"))),
+                                (String) result.getValue("Error"));
+                    }
+                } finally {
+                    results.close();
+                }
+            }
+        } catch (AsyncApiException | ConnectionException e) {
+            throw new IOException(e);
+        } finally {
+            runtime.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        file.delete();
+    }
+
+    private String[] getColumns(Schema schema) {
+        List<String> names = new ArrayList<>();
+        for (Schema.Field f : schema.getFields()) {
+            Schema.Field se = targetSchema.getField(f.name());
+            if (se != null) {
+                names.add(se.name());
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private void bind(Schema schema) {
+        if (schema == inputSchema) {
+            return;
+        }
+        positions = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Schema.Field f = schema.getField(columns[i]);
+            positions[i] = f == null ? -1 : f.pos();
+        }
+        inputSchema = schema;
+    }
+
+    private String format(Object value) {
+        if (value instanceof Date) {
+            return dateFormat.format((Date) value);
+        } else if (value instanceof Calendar) {
+            return dateFormat.format(((Calendar) value).getTime());
+        } else if (value instanceof byte[]) {
+            // Decoded as for the SOAP calls.
+            return Charset.defaultCharset().decode(ByteBuffer.wrap((byte[]) value)).toString();
+        }
+        return String.valueOf(value);
+    }
+}
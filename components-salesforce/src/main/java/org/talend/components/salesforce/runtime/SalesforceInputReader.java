@@ -12,6 +12,7 @@
 // ============================================================================
 package org.talend.components.salesforce.runtime;
 
+import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.soap.partner.QueryResult;
 import com.sforce.soap.partner.sobject.SObject;
 import com.sforce.ws.ConnectionException;
@@ -25,6 +26,12 @@ import org.talend.components.salesforce.tsalesforceinput.TSalesforceInputPropert
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class SalesforceInputReader extends SalesforceReader<IndexedRecord> {
 
@@ -36,6 +43,18 @@ public class SalesforceInputReader extends SalesforceReader<IndexedRecord> {
 
     private transient int inputRecordsIndex;
 
+    /** Fetches the next page of the query while the current one is read, when prefetching is on. */
+    private transient ExecutorService prefetchExecutor;
+
+    private transient Future<QueryResult> nextPage;
+
+    /** Reads the query without the partner binding, when the streaming parser is on. */
+    private transient SalesforceStreamingQuery streamingQuery;
+
+    private transient SalesforceStreamingQuery.Page streamingPage;
+
+    private transient Future<SalesforceStreamingQuery.Page> nextStreamingPage;
+
     public SalesforceInputReader(RuntimeContainer container, SalesforceSource source, TSalesforceInputProperties props) {
         super(container, source);
         properties = props;
@@ -72,13 +91,38 @@ public class SalesforceInputReader extends SalesforceReader<IndexedRecord> {
 
     @Override
     public boolean start() throws IOException {
+        TSalesforceInputProperties inProperties = (TSalesforceInputProperties) properties;
         try {
+            if (inProperties.prefetchPages.getBooleanValue()) {
+                prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "salesforce-query-prefetch");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            // A manual query can select relationship fields, which are only read through the partner binding.
+            if (inProperties.streamingParser.getBooleanValue() && !inProperties.manualQuery.getBooleanValue()) {
+                streamingQuery = new SalesforceStreamingQuery(getConnection(), (SalesforceSource) getCurrentSource(),
+                        getSchema(), inProperties.batchSize.getIntValue(),
+                        inProperties.getConnectionProperties().clientId.getStringValue());
+                streamingPage = streamingQuery.query(getQueryString(inProperties));
+                inputRecordsIndex = 0;
+                prefetchNextStreamingPage();
+                return !streamingPage.records.isEmpty();
+            }
             inputResult = executeSalesforceQuery();
             if (inputResult.getSize() == 0) {
                 return false;
             }
             inputRecords = inputResult.getRecords();
             inputRecordsIndex = 0;
+            if (prefetchExecutor != null) {
+                prefetchNextPage();
+            }
             return inputRecords.length > 0;
         } catch (ConnectionException e) {
             // Wrap the exception in an IOException.
@@ -88,6 +132,9 @@ public class SalesforceInputReader extends SalesforceReader<IndexedRecord> {
 
     @Override
     public boolean advance() throws IOException {
+        if (streamingQuery != null) {
+            return advanceStreaming();
+        }
         inputRecordsIndex++;
 
         // Fast return conditions.
@@ -99,7 +146,15 @@ public class SalesforceInputReader extends SalesforceReader<IndexedRecord> {
         }
 
         try {
-            inputResult = getConnection().queryMore(inputResult.getQueryLocator());
+            if (nextPage != null) {
+                inputResult = getPrefetched(nextPage);
+                prefetchNextPage();
+            } else {
+                final PartnerConnection connection = getConnection();
+                final String queryLocator = inputResult.getQueryLocator();
+                inputResult = SalesforceApiGovernor.forConnection(connection).call(connection,
+                        () -> connection.queryMore(queryLocator));
+            }
             inputRecords = inputResult.getRecords();
             inputRecordsIndex = 0;
             return inputResult.getSize() > 0;
@@ -110,22 +165,118 @@ public class SalesforceInputReader extends SalesforceReader<IndexedRecord> {
 
     }
 
+    /**
+     * Start fetching the page following the current one in the background, if there is one.
+     */
+    private void prefetchNextPage() throws IOException {
+        nextPage = null;
+        if (inputResult.isDone()) {
+            return;
+        }
+        final PartnerConnection connection = getConnection();
+        final String queryLocator = inputResult.getQueryLocator();
+        nextPage = prefetchExecutor.submit(new Callable<QueryResult>() {
+
+            @Override
+            public QueryResult call() throws ConnectionException {
+                return SalesforceApiGovernor.forConnection(connection).call(connection,
+                        () -> connection.queryMore(queryLocator));
+            }
+        });
+    }
+
+    private boolean advanceStreaming() throws IOException {
+        inputRecordsIndex++;
+        if (inputRecordsIndex < streamingPage.records.size()) {
+            return true;
+        }
+        if (streamingPage.done) {
+            return false;
+        }
+        try {
+            if (nextStreamingPage != null) {
+                streamingPage = getPrefetched(nextStreamingPage);
+                prefetchNextStreamingPage();
+            } else {
+                streamingPage = streamingQuery.queryMore(streamingPage.queryLocator);
+            }
+            inputRecordsIndex = 0;
+            return !streamingPage.records.isEmpty();
+        } catch (ConnectionException e) {
+            // Wrap the exception in an IOException.
+            throw new IOException(e);
+        }
+    }
+
+    private void prefetchNextStreamingPage() {
+        nextStreamingPage = null;
+        if (prefetchExecutor == null || streamingPage.done) {
+            return;
+        }
+        final String queryLocator = streamingPage.queryLocator;
+        nextStreamingPage = prefetchExecutor.submit(new Callable<SalesforceStreamingQuery.Page>() {
+
+            @Override
+            public SalesforceStreamingQuery.Page call() throws IOException, ConnectionException {
+                return streamingQuery.queryMore(queryLocator);
+            }
+        });
+    }
+
+    private <T> T getPrefetched(Future<T> page) throws IOException, ConnectionException {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            // Report the failure of the queryMore call as if it had been made here.
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectionException) {
+                throw (ConnectionException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     public SObject getCurrentSObject() throws NoSuchElementException {
         return inputRecords[inputRecordsIndex];
     }
 
     protected QueryResult executeSalesforceQuery() throws IOException, ConnectionException {
         TSalesforceInputProperties inProperties = (TSalesforceInputProperties)properties;
-        getConnection().setQueryOptions(inProperties.batchSize.getIntValue());
-        return getConnection().query(getQueryString(inProperties));
+        final PartnerConnection connection = getConnection();
+        connection.setQueryOptions(inProperties.batchSize.getIntValue());
+        final String soql = getQueryString(inProperties);
+        return SalesforceApiGovernor.forConnection(connection).call(connection, () -> connection.query(soql));
     }
 
     @Override
     public IndexedRecord getCurrent() {
+        if (streamingQuery != null) {
+            return streamingPage.records.get(inputRecordsIndex);
+        }
         try {
             return ((SObjectAdapterFactory)getFactory()).convertToAvro(getCurrentSObject());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public void close() throws IOException {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+            nextPage = null;
+            nextStreamingPage = null;
+        }
+        setApiUsage();
+    }
 }
@@ -0,0 +1,258 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.avro.Schema;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.talend.daikon.NamedThing;
+import org.talend.daikon.SimpleNamedThing;
+
+/**
+ * Keeps the results of the describe calls made for the components of this process: the module names of an org and the
+ * schemas inferred for its modules.
+ *
+ * The results are kept as text, and each lookup returns a new copy of them, so that a caller can change what it gets.
+ * The most recently used entries are kept in memory, and can also be kept in a directory to be found by the other
+ * processes and the next jobs. An entry older than the time to live given by the caller is loaded again.
+ */
+class SalesforceMetadataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SalesforceMetadataCache.class);
+
+    /** Number of entries kept in memory. */
+    static final int MAX_ENTRIES = 256;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String LOADED = "loaded";
+
+    private static final String VALUE = "value";
+
+    private static final SalesforceMetadataCache INSTANCE = new SalesforceMetadataCache(MAX_ENTRIES);
+
+    /**
+     * Loads a value that is not in the cache.
+     */
+    interface Loader<T> {
+
+        T load() throws IOException;
+    }
+
+    /**
+     * Converts the values of the cache from and to text.
+     */
+    interface Codec<T> {
+
+        String write(T value);
+
+        T read(String text);
+    }
+
+    static final Codec<Schema> SCHEMA = new Codec<Schema>() {
+
+        @Override
+        public String write(Schema value) {
+            return value.toString();
+        }
+
+        @Override
+        public Schema read(String text) {
+            return new Schema.Parser().parse(text);
+        }
+    };
+
+    static final Codec<List<NamedThing>> NAMES = new Codec<List<NamedThing>>() {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public String write(List<NamedThing> value) {
+            JSONArray array = new JSONArray();
+            for (NamedThing nt : value) {
+                JSONArray pair = new JSONArray();
+                pair.add(nt.getName());
+                pair.add(nt.getDisplayName());
+                array.add(pair);
+            }
+            return array.toJSONString();
+        }
+
+        @Override
+        public List<NamedThing> read(String text) {
+            List<NamedThing> result = new ArrayList<>();
+            for (Object o : (JSONArray) JSONValue.parse(text)) {
+                JSONArray pair = (JSONArray) o;
+                result.add(new SimpleNamedThing((String) pair.get(0), (String) pair.get(1)));
+            }
+            return result;
+        }
+    };
+
+    private static class Entry {
+
+        final String value;
+
+        final long loaded;
+
+        Entry(String value, long loaded) {
+            this.value = value;
+            this.loaded = loaded;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    SalesforceMetadataCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static SalesforceMetadataCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param key the key of the value, starting with the key of the org it comes from.
+     * @param ttl how long the value is used once loaded, in milliseconds.
+     * @param directory the directory the values are kept in as well, or null.
+     * @return the value of the key, loaded if it is not in the cache or is too old.
+     */
+    <T> T get(String key, long ttl, File directory, Codec<T> codec, Loader<T> loader) throws IOException {
+        T value = getIfPresent(key, ttl, directory, codec);
+        if (value == null) {
+            value = loader.load();
+            put(key, directory, codec, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of the key, or null if it is not in the cache or is too old.
+     */
+    <T> T getIfPresent(String key, long ttl, File directory, Codec<T> codec) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null && directory != null) {
+            entry = read(getFile(directory, key));
+        }
+        if (entry == null || System.currentTimeMillis() - entry.loaded >= ttl) {
+            return null;
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return codec.read(entry.value);
+    }
+
+    /**
+     * Keep the value of the key, loaded now.
+     */
+    <T> void put(String key, File directory, Codec<T> codec, T value) {
+        Entry entry = new Entry(codec.write(value), System.currentTimeMillis());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        if (directory != null) {
+            write(directory, getFile(directory, key), entry);
+        }
+    }
+
+    /**
+     * Drop the value of the key from the memory and the directory.
+     */
+    void invalidate(String key, File directory) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+        if (directory != null) {
+            getFile(directory, key).toFile().delete();
+        }
+    }
+
+    private static Entry read(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+            String value = props.getProperty(VALUE);
+            return value == null ? null : new Entry(value, Long.parseLong(props.getProperty(LOADED, "0")));
+        } catch (IOException | NumberFormatException e) {
+            LOG.debug("Cannot read the Salesforce metadata " + file, e);
+            return null;
+        }
+    }
+
+    private static void write(File directory, Path file, Entry entry) {
+        Properties props = new Properties();
+        props.setProperty(LOADED, String.valueOf(entry.loaded));
+        props.setProperty(VALUE, entry.value);
+        Path tmp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            // Renamed once written, so that the other processes never read half a file.
+            tmp = Files.createTempFile(directory.toPath(), "metadata", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Cannot write to the Salesforce metadata cache " + directory + ": " + e.getMessage());
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+        }
+    }
+
+    private static Path getFile(File directory, String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest(key.getBytes(UTF8))) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(directory, sb.append(".metadata").toString()).toPath();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
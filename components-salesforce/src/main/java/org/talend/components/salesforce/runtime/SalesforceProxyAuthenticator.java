@@ -0,0 +1,61 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.net.Authenticator;
+import java.net.PasswordAuthentication;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Gives the user and password of the SOCKS proxy of a component to the JDK, which asks the default authenticator for
+ * them when it opens a socket through the proxy.
+ *
+ * The credentials are kept for each proxy host and port, and only given for a SOCKS authentication with that proxy:
+ * unlike the {@code socksProxyHost} and {@code java.net.socks} properties of the JVM, they do not send the other
+ * sockets of the process through the proxy, and the components using other proxies keep their own credentials.
+ */
+class SalesforceProxyAuthenticator extends Authenticator {
+
+    private static final SalesforceProxyAuthenticator INSTANCE = new SalesforceProxyAuthenticator();
+
+    private final ConcurrentMap<String, PasswordAuthentication> credentials = new ConcurrentHashMap<>();
+
+    private SalesforceProxyAuthenticator() {
+    }
+
+    /**
+     * Use the credentials for the SOCKS authentications with the proxy.
+     */
+    static void register(String host, int port, String user, String password) {
+        INSTANCE.credentials.put(key(host, port),
+                new PasswordAuthentication(user, password == null ? new char[0] : password.toCharArray()));
+        // Set again each time, another library of the process may have set its own authenticator meanwhile.
+        Authenticator.setDefault(INSTANCE);
+    }
+
+    @Override
+    protected PasswordAuthentication getPasswordAuthentication() {
+        String protocol = getRequestingProtocol();
+        if (protocol == null || !protocol.toUpperCase(Locale.ROOT).startsWith("SOCKS")
+                || getRequestingHost() == null) {
+            return null;
+        }
+        return credentials.get(key(getRequestingHost(), getRequestingPort()));
+    }
+
+    private static String key(String host, int port) {
+        return host.toLowerCase(Locale.ROOT) + ':' + port;
+    }
+}
@@ -0,0 +1,75 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Splits the records of a query into non-overlapping ranges of creation date.
+ *
+ * The first range has no lower bound and the last one no upper bound, so that together the ranges still cover the
+ * records created before or after the dates the split was computed from.
+ */
+final class SalesforceQueryRanges {
+
+    static final String CREATED_DATE = "CreatedDate";
+
+    private SalesforceQueryRanges() {
+    }
+
+    /**
+     * @return the SOQL conditions of at most {@code count} ranges between the two dates, or an empty list if the dates
+     * are too close to be split.
+     */
+    static List<String> createdDateRanges(long first, long last, int count) {
+        List<Long> bounds = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            // SOQL date time literals have a precision of one second.
+            long bound = (first + (last - first) / count * i) / 1000 * 1000;
+            if (bound > first && (bounds.isEmpty() || bound > bounds.get(bounds.size() - 1))) {
+                bounds.add(bound);
+            }
+        }
+        List<String> ranges = new ArrayList<>();
+        if (bounds.isEmpty()) {
+            return ranges;
+        }
+        ranges.add(CREATED_DATE + " < " + format(bounds.get(0)));
+        for (int i = 1; i < bounds.size(); i++) {
+            ranges.add(CREATED_DATE + " >= " + format(bounds.get(i - 1)) + " AND " + CREATED_DATE + " < "
+                    + format(bounds.get(i)));
+        }
+        ranges.add(CREATED_DATE + " >= " + format(bounds.get(bounds.size() - 1)));
+        return ranges;
+    }
+
+    /**
+     * @return the time of a date time value returned by the partner API.
+     */
+    static long parse(String value) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(value).getTime();
+    }
+
+    private static String format(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+}
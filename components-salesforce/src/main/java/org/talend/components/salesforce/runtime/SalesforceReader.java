@@ -46,6 +46,15 @@ public abstract class SalesforceReader<T> extends AbstractBoundedReader<T> {
         return connection;
     }
 
+    /**
+     * Give the API usage of the org to the container, once the reader made its calls.
+     */
+    protected void setApiUsage() {
+        if (connection != null) {
+            SalesforceSourceOrSink.setApiUsage(container, SalesforceApiGovernor.forConnection(connection).getUsage());
+        }
+    }
+
     protected IndexedRecordAdapterFactory<?, IndexedRecord> getFactory() throws IOException {
         if (null == factory) {
             boolean useBulkFactory = false;
@@ -90,9 +99,20 @@ public abstract class SalesforceReader<T> extends AbstractBoundedReader<T> {
             sb.append(" from "); //$NON-NLS-1$
             sb.append(inProperties.module.moduleName.getStringValue());
             String condition = inProperties.condition.getStringValue();
-            if(condition!=null && condition.trim().length()>0){
+            boolean hasCondition = condition!=null && condition.trim().length()>0;
+            // The range of records of this source, when the query was split.
+            String range = ((SalesforceSource) getCurrentSource()).getQueryRange();
+            if (hasCondition && range != null) {
+                sb.append(" where (");
+                sb.append(condition);
+                sb.append(") and ");
+                sb.append(range);
+            } else if(hasCondition){
                 sb.append(" where ");
                 sb.append(condition);
+            } else if (range != null) {
+                sb.append(" where ");
+                sb.append(range);
             }
             queryText = sb.toString();
         }
@@ -0,0 +1,177 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.talend.components.salesforce.runtime.SalesforceAvroRegistry.StringToBooleanConverter;
+import org.talend.components.salesforce.runtime.SalesforceAvroRegistry.StringToDateConverter;
+import org.talend.components.salesforce.runtime.SalesforceAvroRegistry.StringToDecimalConverter;
+import org.talend.components.salesforce.runtime.SalesforceAvroRegistry.StringToDoubleConverter;
+import org.talend.components.salesforce.runtime.SalesforceAvroRegistry.StringToIntegerConverter;
+import org.talend.daikon.avro.AvroConverter;
+import org.talend.daikon.avro.util.AvroTypes;
+import org.talend.daikon.avro.util.AvroUtils;
+
+/**
+ * Converts the text values returned by Salesforce to the Avro values of a schema.
+ *
+ * The converter of each field is resolved once for the schema and kept in a slot typed with its own class, and
+ * {@link #convert} dispatches on the kind of the field, so each call site only ever sees one converter class. The
+ * converters are stateless, and the instance for a schema is shared by all the adapters and readers of the process,
+ * looked up by the fingerprint of the schema. Only the converters of the most recently used schemas are kept.
+ */
+final class SalesforceSchemaConverter {
+
+    private static final int STRING = 0;
+
+    private static final int BOOLEAN = 1;
+
+    private static final int DECIMAL = 2;
+
+    private static final int DOUBLE = 3;
+
+    private static final int INT = 4;
+
+    private static final int DATE = 5;
+
+    private static final int OTHER = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Number of schemas whose converter is kept. */
+    static final int MAX_ENTRIES = 256;
+
+    /** The converters of the most recently used schemas, guarded by itself. */
+    private static final Map<Long, SalesforceSchemaConverter> CACHE = new LinkedHashMap<Long,
+            SalesforceSchemaConverter>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SalesforceSchemaConverter> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final Schema schema;
+
+    private final String[] names;
+
+    private final int[] kinds;
+
+    private final StringToBooleanConverter[] booleans;
+
+    private final StringToDecimalConverter[] decimals;
+
+    private final StringToDoubleConverter[] doubles;
+
+    private final StringToIntegerConverter[] ints;
+
+    private final StringToDateConverter[] dates;
+
+    @SuppressWarnings("rawtypes")
+    private final AvroConverter[] others;
+
+    private SalesforceSchemaConverter(Schema schema) {
+        this.schema = schema;
+        List<Schema.Field> fields = schema.getFields();
+        int size = fields.size();
+        names = new String[size];
+        kinds = new int[size];
+        booleans = new StringToBooleanConverter[size];
+        decimals = new StringToDecimalConverter[size];
+        doubles = new StringToDoubleConverter[size];
+        ints = new StringToIntegerConverter[size];
+        dates = new StringToDateConverter[size];
+        others = new AvroConverter[size];
+        for (int i = 0; i < size; i++) {
+            Schema.Field f = fields.get(i);
+            names[i] = f.name();
+            AvroConverter<String, ?> converter = SalesforceAvroRegistry.get().getConverterFromString(f);
+            if (converter instanceof StringToBooleanConverter) {
+                kinds[i] = BOOLEAN;
+                booleans[i] = (StringToBooleanConverter) converter;
+            } else if (converter instanceof StringToDecimalConverter) {
+                kinds[i] = DECIMAL;
+                decimals[i] = (StringToDecimalConverter) converter;
+            } else if (converter instanceof StringToDoubleConverter) {
+                kinds[i] = DOUBLE;
+                doubles[i] = (StringToDoubleConverter) converter;
+            } else if (converter instanceof StringToIntegerConverter) {
+                kinds[i] = INT;
+                ints[i] = (StringToIntegerConverter) converter;
+            } else if (converter instanceof StringToDateConverter) {
+                kinds[i] = DATE;
+                dates[i] = (StringToDateConverter) converter;
+            } else if (AvroTypes.isSameType(AvroUtils.unwrapIfNullable(f.schema()), AvroTypes._string())) {
+                // The registry converts strings with an unconverted pass through.
+                kinds[i] = STRING;
+            } else {
+                kinds[i] = OTHER;
+                others[i] = converter;
+            }
+        }
+    }
+
+    /**
+     * @return the converter for the schema, created the first time the schema is seen in this process.
+     */
+    static SalesforceSchemaConverter forSchema(Schema schema) {
+        // The fingerprint is computed on the full schema, since the date patterns are properties of the fields.
+        long fingerprint = SchemaNormalization.fingerprint64(schema.toString().getBytes(UTF8));
+        SalesforceSchemaConverter converter;
+        synchronized (CACHE) {
+            converter = CACHE.get(fingerprint);
+        }
+        if (converter == null || !converter.schema.equals(schema)) {
+            converter = new SalesforceSchemaConverter(schema);
+            synchronized (CACHE) {
+                CACHE.put(fingerprint, converter);
+            }
+        }
+        return converter;
+    }
+
+    String[] getNames() {
+        return names;
+    }
+
+    /**
+     * @return the Avro value of field {@code i} for its text value.
+     */
+    @SuppressWarnings("unchecked")
+    Object convert(int i, Object value) {
+        switch (kinds[i]) {
+        case STRING:
+            return value;
+        case BOOLEAN:
+            return booleans[i].convertToAvro((String) value);
+        case DECIMAL:
+            return decimals[i].convertToAvro((String) value);
+        case DOUBLE:
+            return doubles[i].convertToAvro((String) value);
+        case INT:
+            return ints[i].convertToAvro((String) value);
+        case DATE:
+            return dates[i].convertToAvro((String) value);
+        default:
+            return others[i].convertToAvro(value);
+        }
+    }
+}
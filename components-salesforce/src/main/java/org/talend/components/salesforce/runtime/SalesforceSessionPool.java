@@ -0,0 +1,224 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+/**
+ * The Salesforce sessions opened by the components of this process, shared by the components that log in with the same
+ * credentials.
+ *
+ * A session is only a session id and the service endpoint it was opened for: each component still creates its own
+ * connection on its own {@link ConnectorConfig}, so the headers and options of a connection are never shared. When a
+ * session expires, the first connection to notice it logs in again for all the others, and the connections that come
+ * after it pick the new session up instead of logging in again. Sessions not checked out for a while are dropped.
+ * With a {@link SalesforceSessionStore}, the sessions are also shared with the other processes using the same store.
+ */
+class SalesforceSessionPool {
+
+    /** How long a session is kept without being checked out. */
+    static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(15);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final SalesforceSessionPool INSTANCE = new SalesforceSessionPool(DEFAULT_IDLE_TIMEOUT);
+
+    /**
+     * Logs in on a configuration with no session: on success, the session id and the service endpoint of the
+     * configuration are set.
+     */
+    interface Login {
+
+        void login(ConnectorConfig config) throws ConnectionException;
+    }
+
+    private static class Session {
+
+        final String sessionId;
+
+        final String serviceEndpoint;
+
+        long lastUsed;
+
+        Session(String sessionId, String serviceEndpoint) {
+            this.sessionId = sessionId;
+            this.serviceEndpoint = serviceEndpoint;
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private final long idleTimeout;
+
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    /** One lock per key, so that a login for some credentials does not hold the others back. */
+    private final Map<String, Object> locks = new HashMap<>();
+
+    SalesforceSessionPool(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    static SalesforceSessionPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set a session for the key on the configuration, logging in if there is none in the pool or in the store.
+     *
+     * @param store the store shared with the other processes, or null.
+     */
+    void checkOut(String key, ConnectorConfig config, Login login, SalesforceSessionStore store)
+            throws ConnectionException {
+        synchronized (lockFor(key)) {
+            Session session = getSession(key);
+            if (session == null) {
+                session = open(key, config, login, store);
+            } else if (store != null) {
+                // The session is still used: tell the other processes.
+                store.write(key, session.sessionId, session.serviceEndpoint);
+            }
+            use(session, config);
+        }
+    }
+
+    /**
+     * Renew the session of a configuration that was rejected by Salesforce. The session is only opened again if no
+     * other connection already did it since the configuration checked its session out.
+     *
+     * @param store the store shared with the other processes, or null.
+     */
+    void renew(String key, ConnectorConfig config, Login login, SalesforceSessionStore store)
+            throws ConnectionException {
+        synchronized (lockFor(key)) {
+            Session session = getSession(key);
+            if (session == null || session.sessionId.equals(config.getSessionId())) {
+                session = open(key, config, login, store);
+            }
+            use(session, config);
+        }
+    }
+
+    /**
+     * Drop the session of the key, for example after a logout.
+     */
+    void invalidate(String key) {
+        synchronized (sessions) {
+            sessions.remove(key);
+        }
+    }
+
+    private Object lockFor(String key) {
+        synchronized (locks) {
+            Object lock = locks.get(key);
+            if (lock == null) {
+                lock = new Object();
+                locks.put(key, lock);
+            }
+            return lock;
+        }
+    }
+
+    private Session getSession(String key) {
+        synchronized (sessions) {
+            long now = System.currentTimeMillis();
+            Iterator<Session> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().lastUsed > idleTimeout) {
+                    it.remove();
+                }
+            }
+            return sessions.get(key);
+        }
+    }
+
+    /**
+     * Open a session for the key, with the session of the store if it is not the one of the configuration, or with a
+     * login.
+     */
+    private Session open(final String key, final ConnectorConfig config, final Login login,
+            final SalesforceSessionStore store) throws ConnectionException {
+        if (store == null) {
+            return login(key, config, login);
+        }
+        final String rejected = config.getSessionId();
+        return store.locked(key, new SalesforceSessionStore.Action<Session>() {
+
+            @Override
+            public Session run() throws ConnectionException {
+                String[] stored = store.read(key);
+                Session session;
+                if (stored != null && !stored[0].equals(rejected)) {
+                    session = new Session(stored[0], stored[1]);
+                    synchronized (sessions) {
+                        sessions.put(key, session);
+                    }
+                } else {
+                    session = login(key, config, login);
+                }
+                store.write(key, session.sessionId, session.serviceEndpoint);
+                return session;
+            }
+        });
+    }
+
+    private Session login(String key, ConnectorConfig config, Login login) throws ConnectionException {
+        config.setSessionId(null);
+        login.login(config);
+        Session session = new Session(config.getSessionId(), config.getServiceEndpoint());
+        synchronized (sessions) {
+            sessions.put(key, session);
+        }
+        return session;
+    }
+
+    private void use(Session session, ConnectorConfig config) {
+        synchronized (sessions) {
+            session.lastUsed = System.currentTimeMillis();
+        }
+        config.setSessionId(session.sessionId);
+        config.setServiceEndpoint(session.serviceEndpoint);
+    }
+
+    /**
+     * @return a key for the credentials, that does not contain the secrets themselves.
+     */
+    static String key(String loginType, String endpoint, String user, String secret) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[] { loginType, endpoint, user, secret }) {
+                if (part != null) {
+                    digest.update(part.getBytes(UTF8));
+                }
+                // Separate the parts, so that moving characters from one to the next changes the key.
+                digest.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder(loginType).append(':').append(user).append(':');
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sforce.ws.ConnectionException;
+
+/**
+ * Keeps the sessions of the {@link SalesforceSessionPool} in a directory, so that the jobs running in other processes
+ * with the same credentials can use them instead of logging in.
+ *
+ * There is one file per key, named after the digest of the key, with the session id, its service endpoint and the time
+ * after which the session is no longer used. The files are only readable by their owner where the file system allows
+ * it. A lock file per key makes the processes wait for the one logging in, rather than all logging in at the same time.
+ */
+class SalesforceSessionStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SalesforceSessionStore.class);
+
+    private static final String SESSION_ID = "sessionId";
+
+    private static final String SERVICE_ENDPOINT = "serviceEndpoint";
+
+    private static final String EXPIRES = "expires";
+
+    /**
+     * Something to do while holding the lock of a key.
+     */
+    interface Action<T> {
+
+        T run() throws ConnectionException;
+    }
+
+    private final File directory;
+
+    private final long validity;
+
+    /**
+     * @param validity how long a session is used after it was last stored, in milliseconds.
+     */
+    SalesforceSessionStore(File directory, long validity) {
+        this.directory = directory;
+        this.validity = validity;
+    }
+
+    /**
+     * Run the action while holding the lock of the key, shared with the other processes. If the lock cannot be taken,
+     * the action is still run: the store is only a shortcut.
+     */
+    <T> T locked(String key, Action<T> action) throws ConnectionException {
+        FileChannel channel = null;
+        FileLock lock = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            channel = FileChannel.open(getFile(key, ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = channel.lock();
+        } catch (IOException e) {
+            LOG.warn("Cannot lock the Salesforce session store " + directory + ": " + e.getMessage());
+        }
+        try {
+            return action.run();
+        } finally {
+            try {
+                if (lock != null) {
+                    lock.release();
+                }
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                LOG.debug("Cannot release the lock of the Salesforce session store", e);
+            }
+        }
+    }
+
+    /**
+     * @return the session id and the service endpoint stored for the key, or null if there is none or it expired.
+     */
+    String[] read(String key) {
+        Path file = getFile(key, ".session");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            LOG.debug("Cannot read the Salesforce session " + file, e);
+            return null;
+        }
+        String sessionId = props.getProperty(SESSION_ID);
+        String serviceEndpoint = props.getProperty(SERVICE_ENDPOINT);
+        long expires;
+        try {
+            expires = Long.parseLong(props.getProperty(EXPIRES, "0"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (sessionId == null || serviceEndpoint == null || expires < System.currentTimeMillis()) {
+            return null;
+        }
+        return new String[] { sessionId, serviceEndpoint };
+    }
+
+    /**
+     * Store the session of the key, valid from now on.
+     */
+    void write(String key, String sessionId, String serviceEndpoint) {
+        Properties props = new Properties();
+        props.setProperty(SESSION_ID, sessionId);
+        props.setProperty(SERVICE_ENDPOINT, serviceEndpoint);
+        props.setProperty(EXPIRES, String.valueOf(System.currentTimeMillis() + validity));
+        Path tmp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            // Temporary files are only readable by their owner, and are renamed so that readers never see half a file.
+            tmp = Files.createTempFile(directory.toPath(), "session", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, null);
+            }
+            Files.move(tmp, getFile(key, ".session"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Cannot write to the Salesforce session store " + directory + ": " + e.getMessage());
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+        }
+    }
+
+    private Path getFile(String key, String extension) {
+        // The key ends with the digest of the credentials.
+        return new File(directory, key.substring(key.lastIndexOf(':') + 1) + extension).toPath();
+    }
+}
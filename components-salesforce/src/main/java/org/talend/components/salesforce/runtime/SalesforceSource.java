@@ -12,24 +12,49 @@
 // ============================================================================
 package org.talend.components.salesforce.runtime;
 
+import org.apache.avro.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.talend.components.api.component.runtime.BoundedReader;
 import org.talend.components.api.component.runtime.BoundedSource;
 import org.talend.components.api.container.RuntimeContainer;
+import org.talend.components.api.properties.ComponentProperties;
 import org.talend.components.salesforce.tsalesforcebulkexec.TSalesforceBulkExecProperties;
 import org.talend.components.salesforce.tsalesforcegetdeleted.TSalesforceGetDeletedProperties;
 import org.talend.components.salesforce.tsalesforcegetservertimestamp.TSalesforceGetServerTimestampProperties;
 import org.talend.components.salesforce.tsalesforcegetupdated.TSalesforceGetUpdatedProperties;
 import org.talend.components.salesforce.tsalesforceinput.TSalesforceInputProperties;
 
+import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.ws.ConnectionException;
+
 public class SalesforceSource extends SalesforceSourceOrSink implements BoundedSource {
 
     private static final Logger LOG = LoggerFactory.getLogger(SalesforceSource.class);
 
+    /** Rough size in bytes of a field value, only used to estimate the size of a query. */
+    private static final int ESTIMATED_FIELD_SIZE = 32;
+
+    private static final int MAX_RANGES = 32;
+
+    /** The bulk query job of the chunk read by this source, when a bulk query is split by primary key. */
+    private String bulkJobId;
+
+    /** The batch of the chunk read by this source, when a bulk query is split by primary key. */
+    private String bulkBatchId;
+
+    /** SOQL condition restricting the records read by this source, when a query is split into ranges. */
+    private String queryRange;
+
+    /** Number of records of the query, counted once. */
+    private transient Integer recordCount;
+
     public SalesforceSource() {
     }
 
@@ -37,13 +62,191 @@ public class SalesforceSource extends SalesforceSourceOrSink implements BoundedS
     public List<? extends BoundedSource> splitIntoBundles(long desiredBundleSizeBytes, RuntimeContainer adaptor)
             throws Exception {
         List<BoundedSource> list = new ArrayList<>();
-        list.add(this);
+        if (isPkChunkedBulkQuery()) {
+            list.addAll(splitIntoChunks(adaptor));
+        }
+        if (list.isEmpty() && isSplittableQuery()) {
+            list.addAll(splitIntoRanges(desiredBundleSizeBytes, adaptor));
+        }
+        if (list.isEmpty()) {
+            list.add(this);
+        }
         return list;
     }
 
+    /**
+     * @return true if splitting the query was asked for, the query is generated from the module and condition, and
+     * it is not already restricted to a chunk or range. Counting and splitting the query costs some API calls, so it is
+     * only done on demand.
+     */
+    private boolean isSplittableQuery() {
+        if (!(properties instanceof TSalesforceInputProperties)) {
+            return false;
+        }
+        TSalesforceInputProperties sfInProperties = (TSalesforceInputProperties) properties;
+        return sfInProperties.splitQuery.getBooleanValue() && !sfInProperties.manualQuery.getBooleanValue()
+                && queryRange == null && bulkBatchId == null;
+    }
+
+    /**
+     * Split the query into ranges of creation date with about {@code desiredBundleSizeBytes} of records each. Nothing
+     * is returned if the query is small enough or the module has no creation date.
+     */
+    private List<SalesforceSource> splitIntoRanges(long desiredBundleSizeBytes, RuntimeContainer adaptor)
+            throws IOException {
+        List<SalesforceSource> ranges = new ArrayList<>();
+        long size = getEstimatedSizeBytes(adaptor);
+        if (desiredBundleSizeBytes <= 0 || size <= desiredBundleSizeBytes) {
+            return ranges;
+        }
+        int count = (int) Math.min(MAX_RANGES, (size + desiredBundleSizeBytes - 1) / desiredBundleSizeBytes);
+        PartnerConnection connection = connect(adaptor).connection;
+        Long first = queryCreatedDate(connection, "ASC");
+        Long last = queryCreatedDate(connection, "DESC");
+        if (first == null || last == null) {
+            return ranges;
+        }
+        for (String range : SalesforceQueryRanges.createdDateRanges(first, last, count)) {
+            SalesforceSource source = new SalesforceSource();
+            source.initialize(adaptor, (ComponentProperties) properties);
+            source.queryRange = range;
+            ranges.add(source);
+        }
+        LOG.debug("Query split into {} ranges", ranges.size());
+        return ranges;
+    }
+
+    /**
+     * @return the first or last creation date of the records of the query, or null if there is none.
+     */
+    private Long queryCreatedDate(PartnerConnection connection, String order) {
+        String soql = "SELECT " + SalesforceQueryRanges.CREATED_DATE + " FROM " + getModuleName() + getWhereClause()
+                + " ORDER BY " + SalesforceQueryRanges.CREATED_DATE + " " + order + " LIMIT 1";
+        try {
+            QueryResult result = SalesforceApiGovernor.forConnection(connection).call(connection,
+                    () -> connection.query(soql));
+            if (result.getSize() == 0) {
+                return null;
+            }
+            Object value = result.getRecords()[0].getField(SalesforceQueryRanges.CREATED_DATE);
+            return value == null ? null : SalesforceQueryRanges.parse(value.toString());
+        } catch (ConnectionException | ParseException e) {
+            // Not all the modules have a creation date.
+            LOG.debug("Cannot split the query on " + SalesforceQueryRanges.CREATED_DATE, e);
+            return null;
+        }
+    }
+
+    private String getModuleName() {
+        return ((TSalesforceInputProperties) properties).module.moduleName.getStringValue();
+    }
+
+    private String getWhereClause() {
+        String condition = ((TSalesforceInputProperties) properties).condition.getStringValue();
+        return condition != null && condition.trim().length() > 0 ? " WHERE " + condition : "";
+    }
+
+    String getQueryRange() {
+        return queryRange;
+    }
+
+    private boolean isPkChunkedBulkQuery() {
+        if (bulkBatchId == null && queryRange == null && properties instanceof TSalesforceInputProperties) {
+            TSalesforceInputProperties sfInProperties = (TSalesforceInputProperties) properties;
+            return TSalesforceInputProperties.QUERY_BULK.equals(sfInProperties.queryMode.getStringValue())
+                    && sfInProperties.pkChunking.getBooleanValue();
+        }
+        return false;
+    }
+
+    /**
+     * Submit the bulk query with primary key chunking and return one source for each chunk, so that the chunks can be
+     * read in parallel. Nothing is returned if the module does not support PK chunking.
+     */
+    private List<SalesforceSource> splitIntoChunks(RuntimeContainer adaptor) throws Exception {
+        TSalesforceInputProperties sfInProperties = (TSalesforceInputProperties) properties;
+        SalesforceBulkRuntime bulkRuntime = new SalesforceBulkRuntime(this, adaptor);
+        List<String> batchIds = bulkRuntime.submitChunkedBulkQuery(getModuleName(), getBulkQuery(),
+                sfInProperties.chunkSize.getIntValue());
+        List<SalesforceSource> chunks = new ArrayList<>();
+        if (batchIds != null) {
+            for (String batchId : batchIds) {
+                SalesforceSource chunk = new SalesforceSource();
+                chunk.initialize(adaptor, (ComponentProperties) properties);
+                chunk.bulkJobId = bulkRuntime.getJobId();
+                chunk.bulkBatchId = batchId;
+                chunks.add(chunk);
+            }
+            LOG.debug("Bulk query split into {} chunks", chunks.size());
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the SOQL of the bulk query, as the bulk query reader builds it for a source that is not split.
+     */
+    String getBulkQuery() {
+        TSalesforceInputProperties sfInProperties = (TSalesforceInputProperties) properties;
+        if (sfInProperties.manualQuery.getBooleanValue()) {
+            return sfInProperties.query.getStringValue();
+        }
+        Schema schema = new Schema.Parser().parse(sfInProperties.module.schema.schema.getStringValue());
+        StringBuilder sb = new StringBuilder("select "); //$NON-NLS-1$
+        int count = 0;
+        for (Schema.Field se : schema.getFields()) {
+            if (count++ > 0) {
+                sb.append(", "); //$NON-NLS-1$
+            }
+            sb.append(se.name());
+        }
+        sb.append(" from ").append(getModuleName()); //$NON-NLS-1$
+        String condition = sfInProperties.condition.getStringValue();
+        if (condition != null && condition.trim().length() > 0) {
+            sb.append(" where ").append(condition); //$NON-NLS-1$
+        }
+        return sb.toString();
+    }
+
+    String getBulkJobId() {
+        return bulkJobId;
+    }
+
+    String getBulkBatchId() {
+        return bulkBatchId;
+    }
+
+    /**
+     * Estimate the size of the records of a query from a {@code SELECT COUNT()} on the same module and condition.
+     *
+     * @return 0 when the query is not to be split.
+     */
     @Override
     public long getEstimatedSizeBytes(RuntimeContainer adaptor) {
-        return 0;
+        if (!isSplittableQuery()) {
+            return 0;
+        }
+        if (recordCount == null) {
+            try {
+                PartnerConnection connection = connect(adaptor).connection;
+                String soql = "SELECT COUNT() FROM " + getModuleName() + getWhereClause();
+                recordCount = SalesforceApiGovernor.forConnection(connection)
+                        .call(connection, () -> connection.query(soql)).getSize();
+            } catch (IOException | ConnectionException e) {
+                LOG.debug("Cannot count the records of the query", e);
+                return 0;
+            }
+        }
+        return (long) recordCount * estimateRecordSize();
+    }
+
+    private int estimateRecordSize() {
+        try {
+            Schema schema = new Schema.Parser()
+                    .parse(((TSalesforceInputProperties) properties).module.schema.schema.getStringValue());
+            return Math.max(1, schema.getFields().size()) * ESTIMATED_FIELD_SIZE;
+        } catch (RuntimeException e) {
+            return ESTIMATED_FIELD_SIZE;
+        }
     }
 
     @Override
@@ -39,13 +39,17 @@ import org.talend.daikon.avro.util.AvroUtils;
 import org.talend.daikon.properties.ValidationResult;
 
 import javax.xml.namespace.QName;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SalesforceSourceOrSink implements SourceOrSink {
 
@@ -57,6 +61,20 @@ public class SalesforceSourceOrSink implements SourceOrSink {
 
     protected static final String KEY_CONNECTION = "Connection";
 
+    /** The API calls this process made to the org of a component, set when the component is closed. */
+    public static final String KEY_API_CALLS = "ApiCalls";
+
+    /** The API requests the org of a component can still make in the day, or -1 if not known, set with the calls. */
+    public static final String KEY_API_REQUESTS_REMAINING = "ApiRequestsRemaining";
+
+    /** Keys of the describe results in the metadata cache. */
+    private static final String DESCRIBE_GLOBAL = "describeGlobal";
+
+    private static final String DESCRIBE_SOBJECTS = "describeSObjects:";
+
+    /** Maximum number of modules in a describeSObjects call. */
+    private static final int MAX_DESCRIBE_SOBJECTS = 100;
+
     @Override
     public void initialize(RuntimeContainer container, ComponentProperties properties) {
         this.properties = (SalesforceProvideConnectionProperties )properties;
@@ -104,7 +122,7 @@ public class SalesforceSourceOrSink implements SourceOrSink {
         return properties.getConnectionProperties();
     }
 
-    protected BulkConnection connectBulk(ConnectorConfig config) throws ComponentException {
+    protected BulkConnection connectBulk(final ConnectorConfig config) throws ComponentException {
         final SalesforceConnectionProperties connProps = properties.getConnectionProperties();
         /*
          * When PartnerConnection is instantiated, a login is implicitly executed and, if successful, a valid session is
@@ -122,6 +140,26 @@ public class SalesforceSourceOrSink implements SourceOrSink {
         // This should only be false when doing debugging.
         bulkConfig.setCompression(connProps.needCompression.getBooleanValue());
         bulkConfig.setTraceMessage(connProps.httpTraceMessage.getBooleanValue());
+        // The bulk calls go through the same proxy, with the same timeouts, as the SOAP calls. The credentials of the
+        // SOCKS proxy of the component were registered when the partner connection was opened.
+        bulkConfig.setProxy(config.getProxy());
+        bulkConfig.setProxyUsername(config.getProxyUsername());
+        bulkConfig.setProxyPassword(config.getProxyPassword());
+        bulkConfig.setConnectionTimeout(config.getConnectionTimeout());
+        bulkConfig.setReadTimeout(config.getReadTimeout());
+        // The bulk session is the session of the partner connection: renew that one and take its new session.
+        bulkConfig.setSessionRenewer(new SessionRenewer() {
+
+            @Override
+            public SessionRenewalHeader renewSession(ConnectorConfig connectorConfig) throws ConnectionException {
+                String rejected = connectorConfig.getSessionId();
+                if (rejected == null || rejected.equals(config.getSessionId())) {
+                    SalesforceSourceOrSink.this.renewSession(config);
+                }
+                connectorConfig.setSessionId(config.getSessionId());
+                return null;
+            }
+        });
 
         try {
             return new BulkConnection(bulkConfig);
@@ -144,11 +182,30 @@ public class SalesforceSourceOrSink implements SourceOrSink {
         return connection;
     }
 
+    /**
+     * @return the key of the sessions opened with the credentials of the connection properties.
+     */
+    private static String getSessionKey(SalesforceConnectionProperties connProps) {
+        if (SalesforceConnectionProperties.LOGIN_OAUTH.equals(connProps.loginType.getValue())) {
+            String secret = connProps.oauth.clientSecret.getStringValue() + '\u0000'
+                    + connProps.oauth.tokenFile.getStringValue();
+            return SalesforceSessionPool.key(SalesforceConnectionProperties.LOGIN_OAUTH,
+                    SalesforceConnectionProperties.OAUTH_URL, connProps.oauth.clientId.getStringValue(), secret);
+        }
+        return SalesforceSessionPool.key(SalesforceConnectionProperties.LOGIN_BASIC, SalesforceConnectionProperties.URL,
+                StringUtils.strip(connProps.userPassword.userId.getStringValue(), "\""),
+                StringUtils.strip(connProps.userPassword.password.getStringValue(), "\"")
+                        + StringUtils.strip(connProps.userPassword.securityKey.getStringValue(), "\""));
+    }
+
     class ConnectionHolder {
 
         PartnerConnection connection;
 
         BulkConnection bulkConnection;
+
+        /** Bounds and counts the calls made to the org of the connection. */
+        SalesforceApiGovernor governor;
     }
 
     protected ConnectionHolder connect(RuntimeContainer container) throws IOException {
@@ -163,6 +220,7 @@ public class SalesforceSourceOrSink implements SourceOrSink {
                 PartnerConnection conn = (PartnerConnection) container.getComponentData(refComponentId, KEY_CONNECTION);
                 if (conn != null) {
                     ch.connection = conn;
+                    ch.governor = SalesforceApiGovernor.forConnection(conn);
                     return ch;
                 }
                 throw new IOException("Referenced component: " + refComponentId + " not connected");
@@ -178,9 +236,26 @@ public class SalesforceSourceOrSink implements SourceOrSink {
         config.setPassword(StringUtils.strip(connProps.userPassword.password.getStringValue(), "\"")
                 + StringUtils.strip(connProps.userPassword.securityKey.getStringValue(), "\""));
 
-        ProxyPropertiesRuntimeHelper.setProxy(connProps.proxy, ProxyProperties.ProxyType.SOCKS);
+        if (SalesforceConnectionProperties.LOGIN_OAUTH.equals(connProps.loginType.getValue())) {
+            // The OAuth client cannot be given a proxy, it only goes through the proxy of the JVM.
+            ProxyPropertiesRuntimeHelper.setProxy(connProps.proxy, ProxyProperties.ProxyType.SOCKS);
+        }
+
+        setProxy(config, connProps.proxy);
 
-        setProxy(config);
+        // Sessions are shared with the other components logging in with the same credentials.
+        final String sessionKey = connProps.reuseSession.getBooleanValue() ? getSessionKey(connProps) : null;
+        String sessionDirectory = connProps.sessionDirectory.getStringValue();
+        final SalesforceSessionStore sessionStore = sessionKey != null && !StringUtils.isEmpty(sessionDirectory)
+                ? new SalesforceSessionStore(new File(sessionDirectory), SalesforceSessionPool.DEFAULT_IDLE_TIMEOUT)
+                : null;
+        final SalesforceSessionPool.Login login = new SalesforceSessionPool.Login() {
+
+            @Override
+            public void login(ConnectorConfig loginConfig) throws ConnectionException {
+                doConnection(loginConfig);
+            }
+        };
 
         // Notes on how to test this
         // http://thysmichels.com/2014/02/15/salesforce-wsc-partner-connection-session-renew-when-session-timeout/
@@ -190,15 +265,24 @@ public class SalesforceSourceOrSink implements SourceOrSink {
             @Override
             public SessionRenewalHeader renewSession(ConnectorConfig connectorConfig) throws ConnectionException {
                 SessionRenewalHeader header = new SessionRenewalHeader();
-                // FIXME - session id need to be null for trigger the login?
-                // connectorConfig.setSessionId(null);
-                doConnection(connectorConfig);
+                if (sessionKey != null) {
+                    SalesforceSessionPool.get().renew(sessionKey, connectorConfig, login, sessionStore);
+                } else {
+                    // The session id needs to be null to trigger the login.
+                    connectorConfig.setSessionId(null);
+                    login.login(connectorConfig);
+                }
+                if (ch.connection != null) {
+                    // The later calls of the connection need the new session as well.
+                    ch.connection.setSessionHeader(connectorConfig.getSessionId());
+                }
 
-                SessionHeader_element h = ch.connection.getSessionHeader();
+                SessionHeader_element h = new SessionHeader_element();
+                h.setSessionId(connectorConfig.getSessionId());
                 // FIXME - one or the other, I have seen both
                 // header.name = new QName("urn:partner.soap.sforce.com", "X-SFDC-Session");
                 header.name = new QName("urn:partner.soap.sforce.com", "SessionHeader");
-                header.headerElement = h.getSessionId();
+                header.headerElement = h;
                 return header;
             }
         });
@@ -214,7 +298,13 @@ public class SalesforceSourceOrSink implements SourceOrSink {
 
 
         try {
-            ch.connection = doConnection(config);
+            if (sessionKey != null) {
+                SalesforceSessionPool.get().checkOut(sessionKey, config, login, sessionStore);
+                // The session is already open, this does not log in again.
+                ch.connection = new PartnerConnection(config);
+            } else {
+                ch.connection = doConnection(config);
+            }
             if(ch.connection!=null){
                 String clientId = connProps.clientId.getStringValue();
                 if(clientId!=null){
@@ -222,6 +312,10 @@ public class SalesforceSourceOrSink implements SourceOrSink {
                     ch.connection.setCallOptions(clientId,null);
                 }
             }
+            ch.governor = SalesforceApiGovernor.forOrg(
+                    SalesforceApiGovernor.getOrg(ch.connection.getConfig().getServiceEndpoint()),
+                    connProps.maxConcurrentCalls.getValue() == null ? SalesforceApiGovernor.DEFAULT_MAX_CONCURRENT_CALLS
+                            : connProps.maxConcurrentCalls.getIntValue());
             if(connProps.bulkConnection.getBooleanValue()){
                 ch.bulkConnection = connectBulk(ch.connection.getConfig());
             }
@@ -234,12 +328,23 @@ public class SalesforceSourceOrSink implements SourceOrSink {
         }
     }
 
+    /**
+     * Give the API usage of the org of the current component to the container.
+     */
+    static void setApiUsage(RuntimeContainer container, SalesforceApiGovernor.Usage usage) {
+        if (container == null) {
+            return;
+        }
+        container.setComponentData(container.getCurrentComponentId(), KEY_API_CALLS, usage.calls);
+        container.setComponentData(container.getCurrentComponentId(), KEY_API_REQUESTS_REMAINING,
+                usage.getRemainingApiRequests());
+    }
+
     public static List<NamedThing> getSchemaNames(RuntimeContainer container, SalesforceProvideConnectionProperties properties)
             throws IOException {
         SalesforceSourceOrSink ss = new SalesforceSourceOrSink();
         ss.initialize(null, (ComponentProperties) properties);
         try {
-            PartnerConnection connection = ss.connect(container).connection;
             return ss.getSchemaNames(container);
         } catch (Exception ex) {
             throw new ComponentException(exceptionToValidationResult(ex));
@@ -247,15 +352,22 @@ public class SalesforceSourceOrSink implements SourceOrSink {
     }
 
     @Override
-    public List<NamedThing> getSchemaNames(RuntimeContainer container) throws IOException {
-        return getSchemaNames(connect(container).connection);
+    public List<NamedThing> getSchemaNames(final RuntimeContainer container) throws IOException {
+        return getMetadata(container, DESCRIBE_GLOBAL, SalesforceMetadataCache.NAMES,
+                new SalesforceMetadataCache.Loader<List<NamedThing>>() {
+
+                    @Override
+                    public List<NamedThing> load() throws IOException {
+                        return getSchemaNames(connect(container).connection);
+                    }
+                });
     }
 
     protected List<NamedThing> getSchemaNames(PartnerConnection connection) throws IOException {
         List<NamedThing> returnList = new ArrayList<>();
         DescribeGlobalResult result = null;
         try {
-            result = connection.describeGlobal();
+            result = SalesforceApiGovernor.forConnection(connection).call(connection, connection::describeGlobal);
         } catch (ConnectionException e) {
             throw new ComponentException(e);
         }
@@ -267,35 +379,210 @@ public class SalesforceSourceOrSink implements SourceOrSink {
         return returnList;
     }
 
-    public static Schema getSchema(RuntimeContainer container, SalesforceProvideConnectionProperties properties, String module)
+    public static Schema getSchema(final RuntimeContainer container, SalesforceProvideConnectionProperties properties,
+            final String module)
             throws IOException {
+        final SalesforceSourceOrSink ss = new SalesforceSourceOrSink();
+        ss.initialize(null, (ComponentProperties) properties);
+        return ss.getMetadata(container, DESCRIBE_SOBJECTS + module, SalesforceMetadataCache.SCHEMA,
+                new SalesforceMetadataCache.Loader<Schema>() {
+
+                    @Override
+                    public Schema load() throws IOException {
+                        PartnerConnection connection = null;
+                        try {
+                            connection = ss.connect(container).connection;
+                        } catch (IOException ex) {
+                            throw new ComponentException(exceptionToValidationResult(ex));
+                        }
+                        return ss.getSchema(connection, module);
+                    }
+                });
+    }
+
+    @Override
+    public Schema getSchema(final RuntimeContainer container, final String schemaName) throws IOException {
+        return getMetadata(container, DESCRIBE_SOBJECTS + schemaName, SalesforceMetadataCache.SCHEMA,
+                new SalesforceMetadataCache.Loader<Schema>() {
+
+                    @Override
+                    public Schema load() throws IOException {
+                        return getSchema(connect(container).connection, schemaName);
+                    }
+                });
+    }
+
+    /**
+     * Get the schemas of several modules, with as few calls as possible.
+     *
+     * @return the schema of each module, in the order of the modules.
+     */
+    public static Map<String, Schema> getSchemas(RuntimeContainer container,
+            SalesforceProvideConnectionProperties properties, List<String> modules) throws IOException {
         SalesforceSourceOrSink ss = new SalesforceSourceOrSink();
         ss.initialize(null, (ComponentProperties) properties);
-        PartnerConnection connection = null;
+        return ss.getSchemas(container, modules);
+    }
+
+    /**
+     * Get the schemas of several modules: the modules not in the metadata cache are described together, on a single
+     * connection.
+     *
+     * @return the schema of each module, in the order of the modules.
+     */
+    public Map<String, Schema> getSchemas(RuntimeContainer container, List<String> modules) throws IOException {
+        Map<String, Schema> schemas = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        MetadataCacheScope scope = getMetadataCacheScope(container);
+        for (String module : modules) {
+            Schema schema = scope == null ? null
+                    : SalesforceMetadataCache.get().getIfPresent(scope.keyPrefix + DESCRIBE_SOBJECTS + module,
+                            scope.ttl, scope.directory, SalesforceMetadataCache.SCHEMA);
+            // Keep the place of the module in the result.
+            schemas.put(module, schema);
+            if (schema == null) {
+                missing.add(module);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Schema> described = getSchemas(connect(container).connection, missing);
+            for (String module : missing) {
+                Schema schema = described.get(module);
+                schemas.put(module, schema);
+                if (scope != null) {
+                    SalesforceMetadataCache.get().put(scope.keyPrefix + DESCRIBE_SOBJECTS + module, scope.directory,
+                            SalesforceMetadataCache.SCHEMA, schema);
+                }
+            }
+        }
+        return schemas;
+    }
+
+    /**
+     * Describe the modules by groups of {@link #MAX_DESCRIBE_SOBJECTS}, one group after the other: the calls of a
+     * partner connection share its headers, so the connection is not used by several threads.
+     */
+    protected Map<String, Schema> getSchemas(PartnerConnection connection, List<String> modules) throws IOException {
+        Map<String, Schema> schemas = new HashMap<>();
+        for (int i = 0; i < modules.size(); i += MAX_DESCRIBE_SOBJECTS) {
+            schemas.putAll(describeSchemas(connection, modules.subList(i, Math.min(i + MAX_DESCRIBE_SOBJECTS,
+                    modules.size()))));
+        }
+        return schemas;
+    }
+
+    private static Map<String, Schema> describeSchemas(PartnerConnection connection, List<String> modules)
+            throws IOException {
         try {
-            connection = ss.connect(container).connection;
-        } catch (IOException ex) {
-            throw new ComponentException(exceptionToValidationResult(ex));
+            final String[] names = modules.toArray(new String[modules.size()]);
+            DescribeSObjectResult[] results = SalesforceApiGovernor.forConnection(connection).call(connection,
+                    () -> connection.describeSObjects(names));
+            Map<String, Schema> schemas = new HashMap<>();
+            // The results come in the order of the names.
+            for (int i = 0; i < results.length; i++) {
+                schemas.put(modules.get(i), SalesforceAvroRegistry.get().inferSchema(results[i]));
+            }
+            return schemas;
+        } catch (ConnectionException e) {
+            throw new IOException(e);
         }
-        return ss.getSchema(connection, module);
     }
 
-    @Override
-    public Schema getSchema(RuntimeContainer container, String schemaName) throws IOException {
-        return getSchema(connect(container).connection, schemaName);
+    /**
+     * Where and how long the metadata of a connection is cached.
+     */
+    private static class MetadataCacheScope {
+
+        final String keyPrefix;
+
+        final long ttl;
+
+        final File directory;
+
+        MetadataCacheScope(String keyPrefix, long ttl, File directory) {
+            this.keyPrefix = keyPrefix;
+            this.ttl = ttl;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * @return where the metadata of the connection is cached, or null if the metadata cache is disabled or the
+     * connection is the one of another component of the job.
+     */
+    private MetadataCacheScope getMetadataCacheScope(RuntimeContainer container) {
+        SalesforceConnectionProperties connProps = properties.getConnectionProperties();
+        if (connProps.getReferencedComponentId() != null) {
+            if (container != null) {
+                return null;
+            }
+            connProps = connProps.getReferencedConnectionProperties();
+        }
+        Integer ttl = (Integer) connProps.metadataCacheTtl.getValue();
+        if (ttl == null || ttl <= 0) {
+            return null;
+        }
+        String directory = connProps.metadataCacheDirectory.getStringValue();
+        // The metadata depends on the permissions of the user, so it is cached for each user rather than each org.
+        return new MetadataCacheScope(getSessionKey(connProps) + ':', ttl * 1000L,
+                StringUtils.isEmpty(directory) ? null : new File(directory));
+    }
+
+    /**
+     * @return the metadata of the org, from the metadata cache if it is enabled.
+     */
+    private <T> T getMetadata(RuntimeContainer container, String name, SalesforceMetadataCache.Codec<T> codec,
+            SalesforceMetadataCache.Loader<T> loader) throws IOException {
+        MetadataCacheScope scope = getMetadataCacheScope(container);
+        if (scope == null) {
+            return loader.load();
+        }
+        return SalesforceMetadataCache.get().get(scope.keyPrefix + name, scope.ttl, scope.directory, codec, loader);
+    }
+
+    /**
+     * Drop the cached module list and the cached schemas of the modules, so that they are described again: the wizard
+     * and the refresh of a module always show the current metadata of the org.
+     */
+    public static void invalidateMetadata(SalesforceProvideConnectionProperties properties, String... modules) {
+        SalesforceSourceOrSink ss = new SalesforceSourceOrSink();
+        ss.initialize(null, (ComponentProperties) properties);
+        MetadataCacheScope scope = ss.getMetadataCacheScope(null);
+        if (scope == null) {
+            return;
+        }
+        SalesforceMetadataCache.get().invalidate(scope.keyPrefix + DESCRIBE_GLOBAL, scope.directory);
+        for (String module : modules) {
+            SalesforceMetadataCache.get().invalidate(scope.keyPrefix + DESCRIBE_SOBJECTS + module, scope.directory);
+        }
     }
 
     protected Schema getSchema(PartnerConnection connection, String module) throws IOException {
         try {
             DescribeSObjectResult[] describeSObjectResults = new DescribeSObjectResult[0];
-            describeSObjectResults = connection.describeSObjects(new String[]{module});
+            describeSObjectResults = SalesforceApiGovernor.forConnection(connection).call(connection,
+                    () -> connection.describeSObjects(new String[] { module }));
             return SalesforceAvroRegistry.get().inferSchema(describeSObjectResults[0]);
         } catch (ConnectionException e) {
             throw new IOException(e);
         }
     }
 
-    private void setProxy(ConnectorConfig config){
+    /**
+     * Use the proxy of the component for this connection only, or else the proxy of the JVM if there is one.
+     */
+    private void setProxy(ConnectorConfig config, ProxyProperties proxy) {
+        if (proxy.useProxy.getBooleanValue()) {
+            SocketAddress addr = new InetSocketAddress(proxy.host.getStringValue(), proxy.port.getIntValue());
+            config.setProxy(new Proxy(Proxy.Type.SOCKS, addr));
+            String proxyUser = proxy.userPassword.userId.getStringValue();
+            if (!StringUtils.isEmpty(proxyUser)) {
+                // Given to the SOCKS handshake rather than sent as HTTP proxy headers to Salesforce.
+                SalesforceProxyAuthenticator.register(proxy.host.getStringValue(), proxy.port.getIntValue(), proxyUser,
+                        proxy.userPassword.password.getStringValue());
+            }
+            return;
+        }
         String proxyHost =null;
         String proxyPort =null;
         String proxyUser = null;
@@ -0,0 +1,366 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.IndexedRecord;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+/**
+ * Runs SOQL queries with the SOAP partner API and reads the responses with a streaming parser.
+ *
+ * The fields of each record are read straight into an array in the order of the schema, and converted once from their
+ * text to the Avro type of the field, without building the {@code SObject} and {@code XmlObject} tree of the partner
+ * binding. Only the fields directly under a record are read: relationship fields are skipped, so this is meant for the
+ * queries generated from the module schema.
+ */
+class SalesforceStreamingQuery {
+
+    private static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+
+    private static final String XSI_NS = "http://www.w3.org/2001/XMLSchema-instance";
+
+    private static final String INVALID_SESSION_ID = "INVALID_SESSION_ID";
+
+    private static final String API_REQUESTS = "API REQUESTS";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    /**
+     * One page of the results of a query.
+     */
+    static class Page {
+
+        final List<IndexedRecord> records;
+
+        final boolean done;
+
+        final String queryLocator;
+
+        Page(List<IndexedRecord> records, boolean done, String queryLocator) {
+            this.records = records;
+            this.done = done;
+            this.queryLocator = queryLocator;
+        }
+    }
+
+    private final PartnerConnection connection;
+
+    private final SalesforceSource source;
+
+    private final Schema schema;
+
+    private final int batchSize;
+
+    private final String clientId;
+
+    private final Map<String, Integer> fieldPositions = new HashMap<>();
+
+    private final SalesforceSchemaConverter converter;
+
+    private final SalesforceApiGovernor governor;
+
+    SalesforceStreamingQuery(PartnerConnection connection, SalesforceSource source, Schema schema, int batchSize,
+            String clientId) {
+        this.connection = connection;
+        this.source = source;
+        this.schema = schema;
+        this.batchSize = batchSize;
+        this.clientId = clientId;
+        for (Schema.Field f : schema.getFields()) {
+            fieldPositions.put(f.name(), f.pos());
+        }
+        converter = SalesforceSchemaConverter.forSchema(schema);
+        governor = SalesforceApiGovernor.forConnection(connection);
+    }
+
+    Page query(String soql) throws IOException, ConnectionException {
+        return call("<urn:query><urn:queryString>" + escape(soql) + "</urn:queryString></urn:query>");
+    }
+
+    Page queryMore(String queryLocator) throws IOException, ConnectionException {
+        return call("<urn:queryMore><urn:queryLocator>" + escape(queryLocator) + "</urn:queryLocator></urn:queryMore>");
+    }
+
+    private Page call(String body) throws IOException, ConnectionException {
+        try {
+            return post(body);
+        } catch (SoapFault fault) {
+            if (!INVALID_SESSION_ID.equals(fault.code)) {
+                throw fault;
+            }
+            // Same as the partner binding: log in again and retry once.
+            source.renewSession(connection.getConfig());
+            return post(body);
+        }
+    }
+
+    /**
+     * Post the call once a permit of the org is available, as for the calls of the partner binding.
+     */
+    private Page post(String body) throws IOException, ConnectionException {
+        governor.acquire();
+        try {
+            return send(body);
+        } finally {
+            governor.release();
+        }
+    }
+
+    private Page send(String body) throws IOException, ConnectionException {
+        ConnectorConfig config = connection.getConfig();
+        URL url = new URL(config.getServiceEndpoint());
+        HttpURLConnection http = (HttpURLConnection) (config.getProxy() == null ? url.openConnection()
+                : url.openConnection(config.getProxy()));
+        http.setRequestMethod("POST");
+        http.setDoOutput(true);
+        http.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+        http.setRequestProperty("SOAPAction", "\"\"");
+        if (config.isCompression()) {
+            http.setRequestProperty("Accept-Encoding", "gzip");
+        }
+        if (config.getProxyUsername() != null) {
+            // Same as the transport of the partner binding.
+            String token = config.getProxyUsername() + ":" + config.getProxyPassword();
+            String auth = "Basic " + Base64.getEncoder().encodeToString(token.getBytes("UTF-8"));
+            http.setRequestProperty("Proxy-Authorization", auth);
+            http.setRequestProperty("Https-Proxy-Authorization", auth);
+        }
+        if (config.getConnectionTimeout() > 0) {
+            http.setConnectTimeout(config.getConnectionTimeout());
+        }
+        if (config.getReadTimeout() > 0) {
+            http.setReadTimeout(config.getReadTimeout());
+        }
+        try (OutputStream out = http.getOutputStream()) {
+            out.write(envelope(config.getSessionId(), body).getBytes("UTF-8"));
+        }
+        int status = http.getResponseCode();
+        // Faults come with a server error status and are read from the error stream.
+        InputStream in = status >= HttpURLConnection.HTTP_BAD_REQUEST ? http.getErrorStream() : http.getInputStream();
+        if (in == null) {
+            throw new ConnectionException("Unexpected HTTP status " + status + " from " + url);
+        }
+        if ("gzip".equalsIgnoreCase(http.getContentEncoding())) {
+            in = new GZIPInputStream(in);
+        }
+        try {
+            return parse(in);
+        } catch (XMLStreamException e) {
+            throw new ConnectionException("Cannot parse the query response", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private String envelope(String sessionId, String body) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        sb.append("<env:Envelope xmlns:env=\"").append(SOAP_NS).append("\" xmlns:urn=\"urn:partner.soap.sforce.com\">");
+        sb.append("<env:Header>");
+        sb.append("<urn:SessionHeader><urn:sessionId>").append(escape(sessionId));
+        sb.append("</urn:sessionId></urn:SessionHeader>");
+        if (batchSize > 0) {
+            sb.append("<urn:QueryOptions><urn:batchSize>").append(batchSize);
+            sb.append("</urn:batchSize></urn:QueryOptions>");
+        }
+        if (clientId != null) {
+            sb.append("<urn:CallOptions><urn:client>").append(escape(clientId));
+            sb.append("</urn:client></urn:CallOptions>");
+        }
+        sb.append("</env:Header>");
+        sb.append("<env:Body>").append(body).append("</env:Body>");
+        sb.append("</env:Envelope>");
+        return sb.toString();
+    }
+
+    Page parse(InputStream in) throws XMLStreamException, ConnectionException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in, "UTF-8");
+        try {
+            List<IndexedRecord> records = new ArrayList<>();
+            boolean done = true;
+            String queryLocator = null;
+            int fieldCount = schema.getFields().size();
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("records".equals(name)) {
+                    String[] values = new String[fieldCount];
+                    boolean[] seen = new boolean[fieldCount];
+                    // Each child of the record is consumed entirely, so the next end tag closes the record.
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        Integer pos = fieldPositions.get(reader.getLocalName());
+                        if (pos == null || seen[pos] || isSObject(reader)) {
+                            skipElement(reader);
+                        } else {
+                            // The first occurrence wins, the Id comes twice when it is selected.
+                            seen[pos] = true;
+                            values[pos] = isNil(reader) ? readNil(reader) : reader.getElementText();
+                        }
+                    }
+                    GenericData.Record record = new GenericData.Record(schema);
+                    for (int i = 0; i < fieldCount; i++) {
+                        record.put(i, converter.convert(i, values[i]));
+                    }
+                    records.add(record);
+                } else if ("done".equals(name)) {
+                    done = Boolean.parseBoolean(reader.getElementText());
+                } else if ("queryLocator".equals(name)) {
+                    queryLocator = isNil(reader) ? readNil(reader) : reader.getElementText();
+                } else if ("limitInfo".equals(name)) {
+                    readLimitInfo(reader);
+                } else if ("Fault".equals(name) && SOAP_NS.equals(reader.getNamespaceURI())) {
+                    throw readFault(reader);
+                }
+            }
+            return new Page(records, done, queryLocator);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Give the API requests used by the org, returned in the limit info header, to its governor.
+     */
+    private void readLimitInfo(XMLStreamReader reader) throws XMLStreamException {
+        String current = null;
+        String limit = null;
+        String type = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("current".equals(reader.getLocalName())) {
+                current = reader.getElementText();
+            } else if ("limit".equals(reader.getLocalName())) {
+                limit = reader.getElementText();
+            } else if ("type".equals(reader.getLocalName())) {
+                type = reader.getElementText();
+            } else {
+                skipElement(reader);
+            }
+        }
+        if (API_REQUESTS.equals(type) && current != null && limit != null) {
+            try {
+                governor.update(Integer.parseInt(current.trim()), Integer.parseInt(limit.trim()));
+            } catch (NumberFormatException e) {
+                // Not a usage the governor can keep.
+            }
+        }
+    }
+
+    private SoapFault readFault(XMLStreamReader reader) throws XMLStreamException {
+        String code = null;
+        String message = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("faultcode".equals(reader.getLocalName())) {
+                code = reader.getElementText();
+                // Drop the namespace prefix, as in sf:INVALID_SESSION_ID.
+                code = code.substring(code.indexOf(':') + 1);
+            } else if ("faultstring".equals(reader.getLocalName())) {
+                message = reader.getElementText();
+            } else {
+                skipElement(reader);
+            }
+        }
+        return new SoapFault(code, message);
+    }
+
+    private static boolean isNil(XMLStreamReader reader) {
+        return "true".equals(reader.getAttributeValue(XSI_NS, "nil"));
+    }
+
+    private static String readNil(XMLStreamReader reader) throws XMLStreamException {
+        skipElement(reader);
+        return null;
+    }
+
+    private static boolean isSObject(XMLStreamReader reader) {
+        String type = reader.getAttributeValue(XSI_NS, "type");
+        return type != null && type.endsWith("sObject");
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            case '\'':
+                sb.append("&apos;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A SOAP fault returned by Salesforce.
+     */
+    static class SoapFault extends ConnectionException {
+
+        private static final long serialVersionUID = 1L;
+
+        final String code;
+
+        SoapFault(String code, String message) {
+            super(code + ": " + message);
+            this.code = code;
+        }
+    }
+}
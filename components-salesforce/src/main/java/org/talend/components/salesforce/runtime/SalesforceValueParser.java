@@ -0,0 +1,175 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Parsers for the text of the values returned by Salesforce, for the common cases only.
+ *
+ * Each method returns null when the text is not in the expected shape, and the caller then falls back to the generic
+ * parsing. All the methods are stateless and can be called from any thread.
+ */
+final class SalesforceValueParser {
+
+    /** The pattern set on date fields by the registry. */
+    static final String DATE_PATTERN = "yyyy-MM-dd";
+
+    /** The pattern set on date time fields by the registry. */
+    static final String DATETIME_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'.000Z'";
+
+    /** Unscaled values below this limit are exact doubles. */
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    /** Powers of ten that are exact doubles. */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private SalesforceValueParser() {
+    }
+
+    /**
+     * Parse a date in the {@code yyyy-MM-dd} format, at the start of the day in the given zone.
+     */
+    static Long parseDate(String value, ZoneId zone) {
+        if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            return null;
+        }
+        try {
+            return LocalDate.of(year, month, day).atStartOfDay(zone).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a date time in the {@code yyyy-MM-dd'T'HH:mm:ss.SSS'Z'} format returned by Salesforce. As with the pattern
+     * assigned by the registry, the time is read in the given zone.
+     */
+    static Long parseDateTime(String value, ZoneId zone) {
+        if (value.length() != 24 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != '.'
+                || value.charAt(23) != 'Z') {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        int millis = digits(value, 20, 3);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || millis < 0) {
+            return null;
+        }
+        try {
+            // Like SimpleDateFormat, a time that occurs twice when the clocks go back is read with the later offset.
+            return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1000000).atZone(zone)
+                    .withLaterOffsetAtOverlap().toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a plain decimal number of at most 18 digits, without exponent.
+     */
+    static BigDecimal parseDecimal(String value) {
+        long unscaled = parseUnscaled(value);
+        return unscaled == Long.MIN_VALUE ? null : BigDecimal.valueOf(unscaled, scale(value));
+    }
+
+    /**
+     * Parse a plain decimal number whose digits and scale are small enough for the result to be exactly rounded with a
+     * single division.
+     */
+    static Double parseDouble(String value) {
+        long unscaled = parseUnscaled(value);
+        if (unscaled == Long.MIN_VALUE || Math.abs(unscaled) >= MAX_EXACT_DOUBLE) {
+            return null;
+        }
+        int scale = scale(value);
+        if (scale >= POWERS_OF_TEN.length) {
+            return null;
+        }
+        if (unscaled == 0 && value.charAt(0) == '-') {
+            return -0.0;
+        }
+        return unscaled / POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * @return the digits of a plain decimal number as a long, or Long.MIN_VALUE if it is not one or is too long.
+     */
+    private static long parseUnscaled(String value) {
+        int length = value.length();
+        int start = length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+') ? 1 : 0;
+        if (length == start || length - start > 19) {
+            return Long.MIN_VALUE;
+        }
+        long unscaled = 0;
+        int digitCount = 0;
+        boolean dot = false;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                unscaled = unscaled * 10 + (c - '0');
+                digitCount++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return Long.MIN_VALUE;
+            }
+        }
+        if (digitCount == 0 || digitCount > 18) {
+            return Long.MIN_VALUE;
+        }
+        return value.charAt(0) == '-' ? -unscaled : unscaled;
+    }
+
+    private static int scale(String value) {
+        int dot = value.indexOf('.');
+        return dot < 0 ? 0 : value.length() - dot - 1;
+    }
+
+    /**
+     * @return the value of the digits, or -1 if one of the characters is not a digit.
+     */
+    private static int digits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
+import org.talend.components.salesforce.SalesforceOutputProperties.OutputAction;
+
+import com.sforce.soap.partner.sobject.SObject;
+
+/**
+ * How incoming records are turned into {@link SObject}s, computed once for the output action, module and schema of a
+ * writer instead of being looked up again for every record.
+ *
+ * The mapping between the input fields and the module fields is bound to the schema of the incoming records when the
+ * first record is seen, and bound again only if a record comes with another schema.
+ */
+class SalesforceWritePlan {
+
+    private static final String ID = "Id";
+
+    /** Rough size of a value that is not a string, only used to estimate the payload of a batch. */
+    private static final int DEFAULT_VALUE_SIZE = 16;
+
+    private final OutputAction action;
+
+    private final String moduleName;
+
+    private final Schema targetSchema;
+
+    private Schema inputSchema;
+
+    /** Positions in the input record of the fields that also exist in the module. */
+    private int[] positions;
+
+    /** Names of the module fields, in the same order as {@link #positions}. */
+    private String[] names;
+
+    /** Whether the value of the field has to be decoded from bytes. */
+    private boolean[] bytes;
+
+    private int idPosition;
+
+    private int lastRecordSize;
+
+    SalesforceWritePlan(OutputAction action, String moduleName, Schema targetSchema) {
+        this.action = action;
+        this.moduleName = moduleName;
+        this.targetSchema = targetSchema;
+    }
+
+    OutputAction getAction() {
+        return action;
+    }
+
+    private void bind(Schema schema) {
+        if (schema == inputSchema) {
+            return;
+        }
+        List<Schema.Field> fields = schema.getFields();
+        int[] p = new int[fields.size()];
+        String[] n = new String[fields.size()];
+        boolean[] b = new boolean[fields.size()];
+        int count = 0;
+        for (Schema.Field f : fields) {
+            Schema.Field se = targetSchema.getField(f.name());
+            if (se != null) {
+                p[count] = f.pos();
+                n[count] = se.name();
+                b[count] = se.schema().getType() == Schema.Type.BYTES;
+                count++;
+            }
+        }
+        positions = count == p.length ? p : Arrays.copyOf(p, count);
+        names = count == n.length ? n : Arrays.copyOf(n, count);
+        bytes = count == b.length ? b : Arrays.copyOf(b, count);
+        Schema.Field idField = schema.getField(ID);
+        idPosition = idField == null ? -1 : idField.pos();
+        inputSchema = schema;
+    }
+
+    /**
+     * @return a new SObject for the module with all the non null values of the input record.
+     */
+    SObject createSObject(IndexedRecord input) {
+        bind(input.getSchema());
+        SObject so = new SObject();
+        so.setType(moduleName);
+        int size = 0;
+        for (int i = 0; i < positions.length; i++) {
+            Object value = input.get(positions[i]);
+            if (value != null) {
+                if (bytes[i]) {
+                    value = Charset.defaultCharset().decode(ByteBuffer.wrap((byte[]) value)).toString();
+                }
+                so.setField(names[i], value);
+                size += names[i].length()
+                        + (value instanceof CharSequence ? ((CharSequence) value).length() : DEFAULT_VALUE_SIZE);
+            }
+        }
+        lastRecordSize = size;
+        return so;
+    }
+
+    /**
+     * @return the Id of the input record.
+     */
+    String getId(IndexedRecord input) {
+        bind(input.getSchema());
+        if (idPosition < 0) {
+            throw new RuntimeException(ID + " not found");
+        }
+        String id = (String) input.get(idPosition);
+        lastRecordSize = id == null ? 0 : id.length();
+        return id;
+    }
+
+    /**
+     * @return the estimated size of the last record converted by this plan.
+     */
+    int getLastRecordSize() {
+        return lastRecordSize;
+    }
+}
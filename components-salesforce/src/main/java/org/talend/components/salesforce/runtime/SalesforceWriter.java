@@ -18,6 +18,8 @@ import com.sforce.soap.partner.sobject.SObject;
 import com.sforce.ws.ConnectionException;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.IndexedRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.talend.components.api.component.runtime.WriteOperation;
 import org.talend.components.api.component.runtime.Writer;
 import org.talend.components.api.component.runtime.WriterResult;
@@ -26,17 +28,20 @@ import org.talend.components.salesforce.tsalesforceoutput.TSalesforceOutputPrope
 import org.talend.daikon.avro.IndexedRecordAdapterFactory;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
 final class SalesforceWriter implements Writer<WriterResult> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SalesforceWriter.class);
+
     private SalesforceWriteOperation salesforceWriteOperation;
 
     private PartnerConnection connection;
 
+    /** The connection of the writer, with its bulk connection once one is needed. */
+    private SalesforceSourceOrSink.ConnectionHolder connectionHolder;
+
     private String uId;
 
     private SalesforceSink sink;
@@ -57,6 +62,20 @@ final class SalesforceWriter implements Writer<WriterResult> {
 
     protected int commitLevel;
 
+    private SalesforceBatchSizer batchSizer;
+
+    /** Estimated size of the records waiting to be sent. */
+    private long pendingBytes;
+
+    /** Only used when several connections are configured, the batches are then sent in the background. */
+    private SalesforceAsyncSender asyncSender;
+
+    /** Number of records sent with SOAP calls before the next ones are loaded with the Bulk API, 0 for never. */
+    private int bulkThreshold;
+
+    /** The records to load with the Bulk API, once the threshold is reached. */
+    private SalesforceBulkSpill bulkSpill;
+
     protected boolean exceptionForErrors;
 
     private int dataCount;
@@ -65,29 +84,61 @@ final class SalesforceWriter implements Writer<WriterResult> {
 
     private transient Schema schema;
 
+    private transient SalesforceWritePlan writePlan;
+
     public SalesforceWriter(SalesforceWriteOperation salesforceWriteOperation, RuntimeContainer container) {
         this.salesforceWriteOperation = salesforceWriteOperation;
         this.container = container;
         sink = (SalesforceSink) salesforceWriteOperation.getSink();
         sprops = sink.getSalesforceOutputProperties();
         commitLevel = 1;
+        if (sprops.extendInsert.getBooleanValue() && sprops.commitLevel.getValue() != null) {
+            commitLevel = sprops.commitLevel.getIntValue();
+        }
+        batchSizer = new SalesforceBatchSizer(commitLevel, sprops.connection.timeout.getIntValue());
+        commitLevel = batchSizer.getMaxBatchSize();
         int arraySize = commitLevel * 2;
         deleteItems = new ArrayList<>(arraySize);
         insertItems = new ArrayList<>(arraySize);
         updateItems = new ArrayList<>(arraySize);
         upsertItems = new ArrayList<>(arraySize);
         upsertKeyColumn = "";
-
+        if (sprops.switchToBulk.getBooleanValue() && sprops.bulkThreshold.getValue() != null) {
+            bulkThreshold = sprops.bulkThreshold.getIntValue();
+        }
     }
 
     @Override
     public void open(String uId) throws IOException {
         this.uId = uId;
-        connection = sink.connect(container).connection;
+        connectionHolder = sink.connect(container);
+        connection = connectionHolder.connection;
+        int concurrentConnections = sprops.concurrentConnections.getValue() == null ? 1
+                : sprops.concurrentConnections.getIntValue();
+        if (concurrentConnections > 1) {
+            // Every sender works with its own connection, which may share its session with the others.
+            List<PartnerConnection> connections = new ArrayList<>(concurrentConnections);
+            connections.add(connection);
+            for (int i = 1; i < concurrentConnections; i++) {
+                PartnerConnection other = sink.connect(container).connection;
+                if (other == connection) {
+                    // A referenced connection is the same object every time, it cannot be used by several threads.
+                    LOG.info("Sending the batches on the referenced connection only");
+                    break;
+                }
+                connections.add(other);
+            }
+            if (connections.size() > 1) {
+                asyncSender = new SalesforceAsyncSender(connections, connections.size() * 2);
+            }
+        }
         if (null == schema) {
             schema = new Schema.Parser().parse(sprops.module.schema.schema.getStringValue());
         }
         upsertKeyColumn = sprops.upsertKeyColumn.getStringValue();
+        writePlan = new SalesforceWritePlan(
+                TSalesforceOutputProperties.OutputAction.valueOf(sprops.outputAction.getStringValue()),
+                sprops.module.moduleName.getStringValue(), schema);
     }
 
     @SuppressWarnings("unchecked")
@@ -105,138 +156,166 @@ final class SalesforceWriter implements Writer<WriterResult> {
         }
         IndexedRecord input = factory.convertToAvro(datum);
 
-        if (!TSalesforceOutputProperties.ACTION_DELETE.equals(sprops.outputAction.getValue())) {
-            SObject so = new SObject();
-            so.setType(sprops.module.moduleName.getStringValue());
-
-            for (Schema.Field f : input.getSchema().getFields()) {
-                Object value = input.get(f.pos());
-                if (value != null) {
-                    Schema.Field se = schema.getField(f.name());
-                    if (se != null) {
-                        addSObjectField(so, f, se, value);
-                    }
+        if (bulkSpill == null && bulkThreshold > 0 && dataCount >= bulkThreshold) {
+            switchToBulk();
+        }
+        if (bulkSpill != null) {
+            if (writePlan.getAction() == TSalesforceOutputProperties.OutputAction.DELETE) {
+                // As for the SOAP calls: a record without Id is skipped, a schema without Id fails.
+                String id = writePlan.getId(input);
+                if (id != null) {
+                    bulkSpill.writeId(id);
                 }
+            } else {
+                bulkSpill.write(input);
             }
+            dataCount++;
+            return;
+        }
 
-            switch (TSalesforceOutputProperties.OutputAction.valueOf(sprops.outputAction.getStringValue())) {
-                case INSERT:
-                    insert(so);
-                    break;
-                case UPDATE:
-                    update(so);
-                    break;
-                case UPSERT:
-                    upsert(so);
-                    break;
-                case DELETE:
-                    // See below
-                    throw new RuntimeException("Impossible");
-            }
-        } else { // DELETE
-            String id = getIdValue(input);
-            if (id != null) {
-                delete(id);
-            }
+        // The size of the record is counted before it is added, so that the batch it ends up in stays under the limit.
+        switch (writePlan.getAction()) {
+            case INSERT:
+                SObject toInsert = writePlan.createSObject(input);
+                addPendingBytes(writePlan.getLastRecordSize());
+                insert(toInsert);
+                break;
+            case UPDATE:
+                SObject toUpdate = writePlan.createSObject(input);
+                addPendingBytes(writePlan.getLastRecordSize());
+                update(toUpdate);
+                break;
+            case UPSERT:
+                SObject toUpsert = writePlan.createSObject(input);
+                addPendingBytes(writePlan.getLastRecordSize());
+                upsert(toUpsert);
+                break;
+            case DELETE:
+                String id = writePlan.getId(input);
+                if (id != null) {
+                    addPendingBytes(writePlan.getLastRecordSize());
+                    delete(id);
+                }
+                break;
         }
         dataCount++;
     }
 
-    protected String getIdValue(IndexedRecord input) {
-        String ID = "Id";
-        Schema.Field idField = input.getSchema().getField(ID);
-        if (null != idField) {
-            return (String) input.get(idField.pos());
+    /**
+     * Count the size of a record about to be added, first sending the pending records if the record would take their
+     * batch over the largest payload of a call.
+     */
+    private void addPendingBytes(int recordSize) throws IOException {
+        if (pendingBytes > 0 && pendingBytes + recordSize > SalesforceBatchSizer.MAX_PAYLOAD_BYTES) {
+            sendPending();
         }
-        throw new RuntimeException(ID + " not found");
+        pendingBytes += recordSize;
     }
 
-    protected void addSObjectField(SObject sObject, Schema.Field actual, Schema.Field expected, Object value) {
-        Object valueToAdd = null;
-        // Convert stuff here
-        switch (expected.schema().getType()) {
-            case BYTES:
-                valueToAdd = Charset.defaultCharset().decode(ByteBuffer.wrap((byte[]) value)).toString();
-                break;
-            // case DATE:
-            // case DATETIME:
-            // valueToAdd = container.formatDate((Date) value, se.getPattern());
-            // break;
-            default:
-                valueToAdd = value;
-                break;
+    /**
+     * Send the records waiting for a call, whatever the action of the writer.
+     */
+    private void sendPending() throws IOException {
+        doInsert();
+        doDelete();
+        doUpdate();
+        doUpsert();
+    }
+
+    /**
+     * Send the records waiting for a SOAP call, and keep the next ones to load them with the Bulk API once the writer
+     * is closed.
+     */
+    private void switchToBulk() throws IOException {
+        LOG.info("{} records written to {}, switching to the Bulk API", dataCount,
+                sprops.module.moduleName.getStringValue());
+        sendPending();
+        bulkSpill = new SalesforceBulkSpill(writePlan.getAction(), schema);
+    }
+
+    /**
+     * Load the records kept since the switch with a Bulk API job, and handle their results as those of the SOAP calls.
+     */
+    private void loadBulk() throws IOException {
+        // The job runs on the session of the writer, rather than on a new login.
+        if (connectionHolder.bulkConnection == null) {
+            connectionHolder.bulkConnection = sink.connectBulk(connection.getConfig());
         }
-        sObject.setField(expected.name(), valueToAdd);
+        SalesforceBulkRuntime bulkRuntime = new SalesforceBulkRuntime(connectionHolder);
+        if (sprops.concurrentConnections.getValue() != null) {
+            bulkRuntime.setParallelUploads(sprops.concurrentConnections.getIntValue());
+        }
+        LOG.info("Loading {} records to {} with the Bulk API", bulkSpill.getCount(),
+                sprops.module.moduleName.getStringValue());
+        bulkSpill.load(bulkRuntime, sprops.module.moduleName.getStringValue(), sprops.outputAction.getStringValue(),
+                upsertKeyColumn, this::handleBulkResult);
     }
 
     protected SaveResult[] insert(SObject sObject) throws IOException {
         insertItems.add(sObject);
-        return doInsert();
+        if (insertItems.size() >= batchSizer.getBatchSize()) {
+            return doInsert();
+        }
+        return null;
     }
 
     protected SaveResult[] doInsert() throws IOException {
-        if (insertItems.size() >= commitLevel) {
-            SObject[] accs = insertItems.toArray(new SObject[insertItems.size()]);
-            String[] changedItemKeys = new String[accs.length];
-            SaveResult[] sr;
-            try {
-                sr = connection.create(accs);
-                insertItems.clear();
+        if (insertItems.size() > 0) {
+            final SObject[] accs = insertItems.toArray(new SObject[insertItems.size()]);
+            final String[] changedItemKeys = new String[accs.length];
+            insertItems.clear();
+            return send(accs.length, c -> c.create(accs), (sr, elapsed) -> {
                 if (sr != null && sr.length != 0) {
                     int batch_idx = -1;
                     for (SaveResult result : sr) {
                         handleResults(result.getSuccess(), result.getErrors(), changedItemKeys, ++batch_idx);
                     }
                 }
-                return sr;
-            } catch (ConnectionException e) {
-                throw new IOException(e);
-            }
+            });
         }
         return null;
     }
 
     protected SaveResult[] update(SObject sObject) throws IOException {
         updateItems.add(sObject);
-        return doUpdate();
+        if (updateItems.size() >= batchSizer.getBatchSize()) {
+            return doUpdate();
+        }
+        return null;
     }
 
     protected SaveResult[] doUpdate() throws IOException {
-        if (updateItems.size() >= commitLevel) {
-            SObject[] upds = updateItems.toArray(new SObject[updateItems.size()]);
-            String[] changedItemKeys = new String[upds.length];
+        if (updateItems.size() > 0) {
+            final SObject[] upds = updateItems.toArray(new SObject[updateItems.size()]);
+            final String[] changedItemKeys = new String[upds.length];
             for (int ix = 0; ix < upds.length; ++ix) {
                 changedItemKeys[ix] = upds[ix].getId();
             }
-            SaveResult[] saveResults;
-            try {
-                saveResults = connection.update(upds);
-                updateItems.clear();
-                upds = null;
-
+            updateItems.clear();
+            return send(upds.length, c -> c.update(upds), (saveResults, elapsed) -> {
                 if (saveResults != null && saveResults.length != 0) {
                     int batch_idx = -1;
                     for (SaveResult result : saveResults) {
                         handleResults(result.getSuccess(), result.getErrors(), changedItemKeys, ++batch_idx);
                     }
                 }
-                return saveResults;
-            } catch (ConnectionException e) {
-                throw new IOException(e);
-            }
+            });
         }
         return null;
     }
 
     protected UpsertResult[] upsert(SObject sObject) throws IOException {
         upsertItems.add(sObject);
-        return doUpsert();
+        if (upsertItems.size() >= batchSizer.getBatchSize()) {
+            return doUpsert();
+        }
+        return null;
     }
 
     protected UpsertResult[] doUpsert() throws IOException {
-        if (upsertItems.size() >= commitLevel) {
-            SObject[] upds = upsertItems.toArray(new SObject[upsertItems.size()]);
-            String[] changedItemKeys = new String[upds.length];
+        if (upsertItems.size() > 0) {
+            final SObject[] upds = upsertItems.toArray(new SObject[upsertItems.size()]);
+            final String[] changedItemKeys = new String[upds.length];
             for (int ix = 0; ix < upds.length; ++ix) {
                 Object value = upds[ix].getField(upsertKeyColumn);
                 if (value == null) {
@@ -245,27 +324,52 @@ final class SalesforceWriter implements Writer<WriterResult> {
                     changedItemKeys[ix] = upsertKeyColumn;
                 }
             }
-            UpsertResult[] upsertResults;
-            try {
-                upsertResults = connection.upsert(upsertKeyColumn, upds);
-                upsertItems.clear();
-                upds = null;
-
+            upsertItems.clear();
+            final String keyColumn = upsertKeyColumn;
+            return send(upds.length, c -> c.upsert(keyColumn, upds), (upsertResults, elapsed) -> {
                 if (upsertResults != null && upsertResults.length != 0) {
                     int batch_idx = -1;
                     for (UpsertResult result : upsertResults) {
                         handleResults(result.getSuccess(), result.getErrors(), changedItemKeys, ++batch_idx);
                     }
                 }
-                return upsertResults;
-            } catch (ConnectionException e) {
-                new IOException(e);
-            }
+            });
         }
         return null;
 
     }
 
+    /**
+     * Send a batch, either directly on the writer connection or through the asynchronous sender. In the latter case
+     * nothing is returned: the results are given to the handler once the batch and all the batches submitted before it
+     * are done.
+     */
+    private <T> T send(int records, SalesforceAsyncSender.BatchCall<T> call, final SalesforceAsyncSender.ResultHandler<T> handler)
+            throws IOException {
+        // Only one action is ever used by a writer so all the pending bytes belong to this batch.
+        final long payloadBytes = pendingBytes;
+        pendingBytes = 0;
+        SalesforceAsyncSender.ResultHandler<T> sizingHandler = (results, elapsed) -> {
+            batchSizer.update(records, elapsed, payloadBytes);
+            handler.handle(results, elapsed);
+        };
+        // Waits for the calls made to the org by the other components.
+        SalesforceAsyncSender.BatchCall<T> governedCall = c -> SalesforceApiGovernor.forConnection(c).call(c,
+                () -> call.call(c));
+        if (asyncSender != null) {
+            asyncSender.submit(governedCall, sizingHandler);
+            return null;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            T results = governedCall.call(connection);
+            sizingHandler.handle(results, System.currentTimeMillis() - start);
+            return results;
+        } catch (ConnectionException e) {
+            throw new IOException(e);
+        }
+    }
+
     protected void handleResults(boolean success, Error[] resultErrors, String[] changedItemKeys, int batchIdx)
             throws IOException {
         StringBuilder errors = new StringBuilder("");
@@ -280,43 +384,60 @@ final class SalesforceWriter implements Writer<WriterResult> {
         }
     }
 
+    protected void handleBulkResult(boolean success, String error) throws IOException {
+        if (!success && exceptionForErrors && error != null && error.length() > 0) {
+            throw new IOException(error + "\n");
+        }
+    }
+
     protected DeleteResult[] delete(String id) throws IOException {
         if (id == null) {
             return null;
         }
         deleteItems.add(id);
-        return doDelete();
+        if (deleteItems.size() >= batchSizer.getBatchSize()) {
+            return doDelete();
+        }
+        return null;
     }
 
     protected DeleteResult[] doDelete() throws IOException {
-        if (deleteItems.size() >= commitLevel) {
-            String[] delIDs = deleteItems.toArray(new String[deleteItems.size()]);
-            String[] changedItemKeys = new String[delIDs.length];
+        if (deleteItems.size() > 0) {
+            final String[] delIDs = deleteItems.toArray(new String[deleteItems.size()]);
+            final String[] changedItemKeys = new String[delIDs.length];
             for (int ix = 0; ix < delIDs.length; ++ix) {
                 changedItemKeys[ix] = delIDs[ix];
             }
-            DeleteResult[] dr;
-            try {
-                dr = connection.delete(delIDs);
-                deleteItems.clear();
-
+            deleteItems.clear();
+            return send(delIDs.length, c -> c.delete(delIDs), (dr, elapsed) -> {
                 if (dr != null && dr.length != 0) {
                     int batch_idx = -1;
                     for (DeleteResult result : dr) {
                         handleResults(result.getSuccess(), result.getErrors(), changedItemKeys, ++batch_idx);
                     }
                 }
-                return dr;
-            } catch (ConnectionException e) {
-                throw new IOException(e);
-            }
+            });
         }
         return null;
     }
 
     @Override
     public WriterResult close() throws IOException {
-        logout();
+        try {
+            logout();
+        } finally {
+            if (asyncSender != null) {
+                asyncSender.close();
+                asyncSender = null;
+            }
+            if (bulkSpill != null) {
+                bulkSpill.close();
+                bulkSpill = null;
+            }
+        }
+        if (connection != null) {
+            SalesforceSourceOrSink.setApiUsage(container, SalesforceApiGovernor.forConnection(connection).getUsage());
+        }
         // this should be computed according to the result of the write I guess but I don't know yet how exceptions are
         // handled by Beam.
         return new WriterResult(uId, dataCount);
@@ -324,10 +445,13 @@ final class SalesforceWriter implements Writer<WriterResult> {
 
     protected void logout() throws IOException {
         // Finish anything uncommitted
-        doInsert();
-        doDelete();
-        doUpdate();
-        doUpsert();
+        sendPending();
+        if (asyncSender != null) {
+            asyncSender.drain();
+        }
+        if (bulkSpill != null && bulkSpill.getCount() > 0) {
+            loadBulk();
+        }
     }
 
     @Override
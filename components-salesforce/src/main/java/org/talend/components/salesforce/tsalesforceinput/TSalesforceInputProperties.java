@@ -47,6 +47,18 @@ public class TSalesforceInputProperties extends SalesforceConnectionModuleProper
 
     public Property columnNameDelimiter = newProperty("columnNameDelimiter"); //$NON-NLS-1$
 
+    public Property prefetchPages = newProperty(Type.BOOLEAN, "prefetchPages"); //$NON-NLS-1$
+
+    public Property streamingParser = newProperty(Type.BOOLEAN, "streamingParser"); //$NON-NLS-1$
+
+    public Property prefetchResultSets = newProperty(Type.INT, "prefetchResultSets"); //$NON-NLS-1$
+
+    public Property pkChunking = newProperty(Type.BOOLEAN, "pkChunking"); //$NON-NLS-1$
+
+    public Property chunkSize = newProperty(Type.INT, "chunkSize"); //$NON-NLS-1$
+
+    public Property splitQuery = newProperty(Type.BOOLEAN, "splitQuery"); //$NON-NLS-1$
+
     public TSalesforceInputProperties(@JsonProperty("name") String name) {
         super(name);
     }
@@ -61,6 +73,8 @@ public class TSalesforceInputProperties extends SalesforceConnectionModuleProper
         queryMode.setValue(QUERY_QUERY);
         normalizeDelimiter.setValue(";");
         columnNameDelimiter.setValue("_");
+        prefetchResultSets.setValue(2);
+        chunkSize.setValue(100000);
 
         queryMode.setPossibleValues(QUERY_QUERY, QUERY_BULK);
 
@@ -78,8 +92,14 @@ public class TSalesforceInputProperties extends SalesforceConnectionModuleProper
 
         Form advancedForm = getForm(Form.ADVANCED);
         advancedForm.addRow(batchSize);
+        advancedForm.addColumn(prefetchPages);
+        advancedForm.addRow(streamingParser);
         advancedForm.addRow(normalizeDelimiter);
         advancedForm.addRow(columnNameDelimiter);
+        advancedForm.addRow(prefetchResultSets);
+        advancedForm.addRow(pkChunking);
+        advancedForm.addColumn(chunkSize);
+        advancedForm.addRow(splitQuery);
     }
 
     public void afterQueryMode() {
@@ -35,6 +35,12 @@ public class TSalesforceOutputProperties extends SalesforceOutputProperties {
 
     public Property commitLevel = newInteger("commitLevel"); //$NON-NLS-1$
 
+    public Property concurrentConnections = newInteger("concurrentConnections"); //$NON-NLS-1$
+
+    public Property switchToBulk = newBoolean("switchToBulk"); //$NON-NLS-1$
+
+    public Property bulkThreshold = newInteger("bulkThreshold"); //$NON-NLS-1$
+
     // FIXME - should be file
     public Property logFileName = newString("logFileName"); //$NON-NLS-1$
 
@@ -47,6 +53,8 @@ public class TSalesforceOutputProperties extends SalesforceOutputProperties {
     public void setupProperties() {
         super.setupProperties();
         commitLevel.setValue(200);
+        concurrentConnections.setValue(1);
+        bulkThreshold.setValue(10000);
         ceaseForError.setValue(true);
     }
 
@@ -60,6 +68,9 @@ public class TSalesforceOutputProperties extends SalesforceOutputProperties {
         advancedForm.addRow(ignoreNull);
         advancedForm.addRow(retrieveInsertId);
         advancedForm.addRow(commitLevel);
+        advancedForm.addRow(concurrentConnections);
+        advancedForm.addRow(switchToBulk);
+        advancedForm.addColumn(bulkThreshold);
         advancedForm.addRow(logFileName);
     }
 
@@ -71,6 +82,10 @@ public class TSalesforceOutputProperties extends SalesforceOutputProperties {
         refreshLayout(getForm(Form.ADVANCED));
     }
 
+    public void afterSwitchToBulk() {
+        refreshLayout(getForm(Form.ADVANCED));
+    }
+
     @Override
     public void refreshLayout(Form form) {
         super.refreshLayout(form);
@@ -85,6 +100,7 @@ public class TSalesforceOutputProperties extends SalesforceOutputProperties {
             }
             form.getWidget("commitLevel").setVisible(extendInsert.getBooleanValue());
             form.getWidget("retrieveInsertId").setVisible(extendInsert.getBooleanValue() && ACTION_INSERT.equals(outputAction.getValue()));
+            form.getWidget("bulkThreshold").setVisible(switchToBulk.getBooleanValue());
             form.getWidget("ignoreNull").setVisible(ACTION_UPDATE.equals(outputAction.getValue())||ACTION_UPSERT.equals(outputAction.getValue()));
 
         }
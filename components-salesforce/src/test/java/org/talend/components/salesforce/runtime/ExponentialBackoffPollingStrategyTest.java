@@ -0,0 +1,44 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ExponentialBackoffPollingStrategyTest {
+
+    @Test
+    public void testDelayStaysWithinBounds() {
+        ExponentialBackoffPollingStrategy polling = new ExponentialBackoffPollingStrategy(1000, 8000);
+        assertThat(polling.nextDelay(false), is(1000L));
+        assertThat(polling.nextDelay(false), allOf(greaterThanOrEqualTo(1000L), lessThanOrEqualTo(2000L)));
+        assertThat(polling.nextDelay(false), allOf(greaterThanOrEqualTo(2000L), lessThanOrEqualTo(4000L)));
+        for (int i = 0; i < 10; i++) {
+            assertThat(polling.nextDelay(false), allOf(greaterThanOrEqualTo(1000L), lessThanOrEqualTo(8000L)));
+        }
+        // Progress brings the delay down again.
+        assertThat(polling.nextDelay(true), allOf(greaterThanOrEqualTo(2000L), lessThanOrEqualTo(4000L)));
+
+        polling.reset();
+        assertThat(polling.nextDelay(false), is(1000L));
+    }
+
+    @Test
+    public void testMaxLowerThanMin() {
+        ExponentialBackoffPollingStrategy polling = new ExponentialBackoffPollingStrategy(1000, 0);
+        assertThat(polling.nextDelay(false), is(1000L));
+        assertThat(polling.nextDelay(false), is(1000L));
+    }
+}
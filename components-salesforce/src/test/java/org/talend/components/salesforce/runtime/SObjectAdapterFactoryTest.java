@@ -0,0 +1,88 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.IndexedRecord;
+import org.junit.Test;
+
+import com.sforce.soap.partner.sobject.SObject;
+
+public class SObjectAdapterFactoryTest {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("Account").fields() //
+            .name("Id").type().nullable().stringType().noDefault() //
+            .name("Name").type().nullable().stringType().noDefault() //
+            .name("Phone").type().nullable().stringType().noDefault() //
+            .endRecord();
+
+    /**
+     * @param fields the names and values of the fields, in the order of the children of the record.
+     */
+    private static SObject sObject(String... fields) {
+        SObject sObject = new SObject();
+        sObject.setType("Account");
+        for (int i = 0; i < fields.length; i += 2) {
+            sObject.setField(fields[i], fields[i + 1]);
+        }
+        return sObject;
+    }
+
+    private static SObjectAdapterFactory factory() {
+        SObjectAdapterFactory factory = new SObjectAdapterFactory();
+        factory.setSchema(SCHEMA);
+        return factory;
+    }
+
+    private static void assertRecord(IndexedRecord record, String id, String name, String phone) {
+        assertEquals(id, record.get(0));
+        assertEquals(name, record.get(1));
+        assertEquals(phone, record.get(2));
+    }
+
+    @Test
+    public void testSameChildOrder() {
+        SObjectAdapterFactory factory = factory();
+        assertRecord(factory.convertToAvro(sObject("Id", "001x1", "Name", "A", "Phone", "1")), "001x1", "A", "1");
+        assertRecord(factory.convertToAvro(sObject("Id", "001x2", "Name", "B", "Phone", "2")), "001x2", "B", "2");
+        // The fields can be read in any order.
+        IndexedRecord record = factory.convertToAvro(sObject("Id", "001x3", "Name", "C", "Phone", "3"));
+        assertEquals("3", record.get(2));
+        assertEquals("001x3", record.get(0));
+    }
+
+    @Test
+    public void testOtherChildOrder() {
+        SObjectAdapterFactory factory = factory();
+        assertRecord(factory.convertToAvro(sObject("Id", "001x1", "Name", "A", "Phone", "1")), "001x1", "A", "1");
+        // Same number of children, at other positions.
+        assertRecord(factory.convertToAvro(sObject("Phone", "2", "Id", "001x2", "Name", "B")), "001x2", "B", "2");
+        assertRecord(factory.convertToAvro(sObject("Id", "001x3", "Name", "C", "Phone", "3")), "001x3", "C", "3");
+    }
+
+    @Test
+    public void testFieldNotInEveryRecord() {
+        SObjectAdapterFactory factory = factory();
+        IndexedRecord record = factory.convertToAvro(sObject("Id", "001x1", "Name", "A"));
+        assertRecord(record, "001x1", "A", null);
+        assertRecord(factory.convertToAvro(sObject("Id", "001x2", "Name", "B", "Phone", "2")), "001x2", "B", "2");
+        // Same number of children as the first record, with another field instead of the phone.
+        record = factory.convertToAvro(sObject("Id", "001x3", "Phone", "3", "Name", "C"));
+        assertRecord(record, "001x3", "C", "3");
+        assertNull(factory.convertToAvro(sObject("Id", "001x4", "Fax", "4", "Name", "D")).get(2));
+    }
+}
@@ -0,0 +1,112 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectorConfig;
+
+public class SalesforceApiGovernorTest {
+
+    @Test
+    public void testGetOrg() {
+        assertEquals("00D30000000XsfGEAS",
+                SalesforceApiGovernor.getOrg("https://na1.salesforce.com/services/Soap/u/34.0/00D30000000XsfGEAS"));
+        assertEquals("https://na1.salesforce.com/services/async/34.0",
+                SalesforceApiGovernor.getOrg("https://na1.salesforce.com/services/async/34.0"));
+    }
+
+    @Test
+    public void testSharedByOrg() {
+        SalesforceApiGovernor governor = SalesforceApiGovernor.forOrg("00D30000000SharedA", 2);
+        assertSame(governor, SalesforceApiGovernor.forOrg("00D30000000SharedA", 5));
+    }
+
+    @Test
+    public void testConfiguredAfterFirstCall() throws Exception {
+        ConnectorConfig config = new ConnectorConfig();
+        config.setSessionId("session");
+        config.setAuthEndpoint("https://localhost/services/Soap/u/34.0");
+        config.setServiceEndpoint("https://localhost/services/Soap/u/34.0/00D30000000ConfA");
+        PartnerConnection connection = new PartnerConnection(config);
+        SalesforceApiGovernor governor = SalesforceApiGovernor.forConnection(connection);
+        assertEquals(SalesforceApiGovernor.DEFAULT_MAX_CONCURRENT_CALLS, governor.getMaxConcurrentCalls());
+        governor.acquire();
+        // The number of calls of the connection of the component is used, even after a call with the default one.
+        assertSame(governor, SalesforceApiGovernor.forOrg("00D30000000ConfA", 2));
+        assertEquals(2, governor.getMaxConcurrentCalls());
+        assertEquals(1, governor.getUsage().activeCalls);
+        governor.release();
+        assertSame(governor, SalesforceApiGovernor.forConnection(connection));
+        assertEquals(2, SalesforceApiGovernor.forOrg("00D30000000ConfA", 5).getMaxConcurrentCalls());
+        assertEquals(0, governor.getUsage().activeCalls);
+    }
+
+    @Test
+    public void testConcurrentCallsBounded() throws Exception {
+        final SalesforceApiGovernor governor = new SalesforceApiGovernor("00D30000000BoundA", 2);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        governor.acquire();
+                        try {
+                            int n = active.incrementAndGet();
+                            maxActive.accumulateAndGet(n, Math::max);
+                            Thread.sleep(20);
+                            active.decrementAndGet();
+                        } finally {
+                            governor.release();
+                        }
+                    } catch (Exception e) {
+                        // Counted as not done.
+                        return;
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maxActive.get() <= 2);
+        assertEquals(6, governor.getUsage().calls);
+        assertEquals(0, governor.getUsage().activeCalls);
+    }
+
+    @Test
+    public void testUsage() {
+        SalesforceApiGovernor governor = new SalesforceApiGovernor("00D30000000UsageA", 0);
+        assertEquals(-1, governor.getUsage().getRemainingApiRequests());
+        governor.update(4600, 5000);
+        governor.jobCreated();
+        governor.batchCreated();
+        governor.batchCreated();
+        SalesforceApiGovernor.Usage usage = governor.getUsage();
+        assertEquals(400, usage.getRemainingApiRequests());
+        assertEquals(1, usage.jobs);
+        assertEquals(2, usage.batches);
+    }
+}
@@ -0,0 +1,126 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+public class SalesforceAsyncSenderTest {
+
+    /**
+     * @return a connection to an open session, which does not log in.
+     */
+    static PartnerConnection newConnection() throws ConnectionException {
+        ConnectorConfig config = new ConnectorConfig();
+        config.setSessionId("session");
+        config.setAuthEndpoint("https://localhost/services/Soap/u/34.0");
+        config.setServiceEndpoint("https://localhost/services/Soap/u/34.0/00D000000000TST");
+        return new PartnerConnection(config);
+    }
+
+    private static void pause(long millis) throws ConnectionException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new ConnectionException("Interrupted", e);
+        }
+    }
+
+    private static List<PartnerConnection> newConnections(int count) throws ConnectionException {
+        List<PartnerConnection> connections = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            connections.add(newConnection());
+        }
+        return connections;
+    }
+
+    @Test
+    public void testResultsInSubmissionOrder() throws Exception {
+        SalesforceAsyncSender sender = new SalesforceAsyncSender(newConnections(3), 6);
+        final List<Integer> handled = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int batch = i;
+            // The first batches take the longest.
+            sender.submit(c -> {
+                pause(5L * (10 - batch));
+                return batch;
+            }, (result, elapsed) -> handled.add(result));
+        }
+        sender.drain();
+        sender.close();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), handled);
+    }
+
+    @Test
+    public void testConnectionUsedByOneCallAtATime() throws Exception {
+        SalesforceAsyncSender sender = new SalesforceAsyncSender(newConnections(2), 8);
+        final Set<PartnerConnection> inUse = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final AtomicBoolean shared = new AtomicBoolean();
+        for (int i = 0; i < 20; i++) {
+            sender.submit(c -> {
+                if (!inUse.add(c)) {
+                    shared.set(true);
+                }
+                pause(2);
+                inUse.remove(c);
+                return null;
+            }, (result, elapsed) -> {
+            });
+        }
+        sender.drain();
+        sender.close();
+        assertFalse(shared.get());
+    }
+
+    @Test
+    public void testCloseWaitsForCallsInFlight() throws Exception {
+        SalesforceAsyncSender sender = new SalesforceAsyncSender(newConnections(1), 2);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean first = new AtomicBoolean();
+        final AtomicBoolean second = new AtomicBoolean();
+        sender.submit(c -> {
+            started.countDown();
+            pause(200);
+            first.set(true);
+            return null;
+        }, (result, elapsed) -> {
+        });
+        sender.submit(c -> {
+            second.set(true);
+            return null;
+        }, (result, elapsed) -> {
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        sender.close();
+        // The call in flight completed, the one waiting for a connection was dropped.
+        assertTrue(first.get());
+        assertFalse(second.get());
+    }
+}
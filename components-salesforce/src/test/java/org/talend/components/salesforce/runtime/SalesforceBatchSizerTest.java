@@ -0,0 +1,50 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SalesforceBatchSizerTest {
+
+    @Test
+    public void testCommitLevelIsCapped() {
+        assertEquals(SalesforceBatchSizer.SOAP_MAX_BATCH_SIZE, new SalesforceBatchSizer(10000, 60000).getBatchSize());
+        assertEquals(1, new SalesforceBatchSizer(0, 60000).getBatchSize());
+        assertEquals(50, new SalesforceBatchSizer(50, 60000).getBatchSize());
+    }
+
+    @Test
+    public void testShrinkOnSlowCallsAndGrowBack() {
+        SalesforceBatchSizer sizer = new SalesforceBatchSizer(200, 60000);
+        sizer.update(200, 20000, 2000);
+        assertEquals(100, sizer.getBatchSize());
+        sizer.update(100, 1000, 1000);
+        assertEquals(125, sizer.getBatchSize());
+        // A partial batch does not make the size grow.
+        sizer.update(10, 1000, 100);
+        assertEquals(125, sizer.getBatchSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.update(sizer.getBatchSize(), 1000, 1000);
+        }
+        assertEquals(200, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testShrinkOnLargePayload() {
+        SalesforceBatchSizer sizer = new SalesforceBatchSizer(200, 60000);
+        sizer.update(200, 1000, 200 * 1024 * 1024L);
+        assertEquals(10, sizer.getBatchSize());
+    }
+}
@@ -0,0 +1,119 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SalesforceBulkFileSplitterTest {
+
+    private static final String CSV = "Name,Description\r\nA,\"multi\nline\"\r\nB,plain\r\nC,\"with \"\"quotes\"\"\"\nD,last";
+
+    private File bulkFile;
+
+    @Before
+    public void setUp() throws IOException {
+        bulkFile = File.createTempFile("sforceBulkAPI", ".csv");
+        write(CSV);
+    }
+
+    private void write(String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(bulkFile)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        bulkFile.delete();
+    }
+
+    @Test
+    public void testSplitOnRows() throws IOException {
+        List<String> batches = split(1000, 2);
+        assertEquals(2, batches.size());
+        assertEquals("Name,Description\r\nA,\"multi\nline\"\r\nB,plain\r\n", batches.get(0));
+        assertEquals("Name,Description\r\nC,\"with \"\"quotes\"\"\"\nD,last", batches.get(1));
+    }
+
+    @Test
+    public void testSplitOnBytes() throws IOException {
+        List<String> batches = split(40, 100);
+        assertEquals(4, batches.size());
+        assertEquals("Name,Description\r\nA,\"multi\nline\"\r\n", batches.get(0));
+        assertEquals("Name,Description\r\nB,plain\r\n", batches.get(1));
+        assertEquals("Name,Description\r\nD,last", batches.get(3));
+    }
+
+    @Test
+    public void testSingleBatch() throws IOException {
+        List<String> batches = split(1000, 100);
+        assertEquals(1, batches.size());
+        assertEquals(CSV, batches.get(0));
+    }
+
+    @Test
+    public void testTrailingBlankLines() throws IOException {
+        write(CSV + "\r\n\r\n\n");
+        List<String> batches = split(1000, 4);
+        assertEquals(1, batches.size());
+        assertEquals(CSV, batches.get(0));
+
+        write("Name\r\nA\r\n\r\n");
+        batches = split(1000, 1);
+        assertEquals(1, batches.size());
+        assertEquals("Name\r\nA", batches.get(0));
+    }
+
+    @Test
+    public void testOnlyHeader() throws IOException {
+        write("Name,Description\n\n");
+        assertEquals(0, split(1000, 100).size());
+    }
+
+    private List<String> split(int maxBytes, int maxRows) throws IOException {
+        List<String> batches = new ArrayList<>();
+        try (SalesforceBulkFileSplitter splitter = new SalesforceBulkFileSplitter(bulkFile, maxBytes, maxRows)) {
+            ByteBuffer batch;
+            while ((batch = splitter.nextBatch()) != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (InputStream in = splitter.openStream(batch)) {
+                    byte[] buffer = new byte[16];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+                batches.add(out.toString("UTF-8"));
+                splitter.release(batch);
+                // Released once only.
+                splitter.release(batch);
+            }
+            assertNull(splitter.nextBatch());
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,122 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SalesforceBulkResultPrefetcherTest {
+
+    @Test
+    public void testResultSetsKeepTheirOrder() throws IOException {
+        List<String> ids = Arrays.asList("752x0000000001", "752x0000000002", "752x0000000003", "752x0000000004");
+        try (SalesforceBulkResultPrefetcher prefetcher = new SalesforceBulkResultPrefetcher(ids,
+                new SalesforceBulkResultPrefetcher.ResultDownload() {
+
+                    @Override
+                    public InputStream open(String resultId) throws Exception {
+                        // The first result sets are the slowest to download.
+                        Thread.sleep(40 - resultId.charAt(resultId.length() - 1) * 10 % 40);
+                        return new ByteArrayInputStream(("Id\n" + resultId).getBytes("UTF-8"));
+                    }
+                }, 2)) {
+            for (String id : ids) {
+                assertEquals("Id\n" + id, read(prefetcher.next()));
+            }
+            assertNull(prefetcher.next());
+        }
+    }
+
+    @Test
+    public void testClosedWhileDownloading() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        int before = countResultFiles();
+        SalesforceBulkResultPrefetcher prefetcher = new SalesforceBulkResultPrefetcher(Arrays.asList("752x0000000001"),
+                new SalesforceBulkResultPrefetcher.ResultDownload() {
+
+                    @Override
+                    public InputStream open(String resultId) throws Exception {
+                        return new ByteArrayInputStream("Id\n752x0000000001".getBytes("UTF-8")) {
+
+                            @Override
+                            public synchronized int read(byte[] b, int off, int len) {
+                                started.countDown();
+                                try {
+                                    // Goes on when interrupted by the close, as a blocking socket read does.
+                                    release.await();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                                return super.read(b, off, len);
+                            }
+
+                            @Override
+                            public void close() throws IOException {
+                                done.countDown();
+                            }
+                        };
+                    }
+                }, 1);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(before + 1, countResultFiles());
+        prefetcher.close();
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // The download deletes its file once it sees the prefetcher is closed.
+        for (int i = 0; i < 100 && countResultFiles() > before; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(before, countResultFiles());
+    }
+
+    private static int countResultFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("sforceBulkResult");
+            }
+        });
+        return files == null ? 0 : files.length;
+    }
+
+    private String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[16];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,358 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.talend.components.salesforce.SalesforceOutputProperties;
+
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchInfoList;
+import com.sforce.async.BatchStateEnum;
+import com.sforce.async.BulkConnection;
+import com.sforce.async.JobInfo;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+public class SalesforceBulkRuntimeTest {
+
+    private static final String CSV = "Name,Phone\nA,1\nB,2\nC,3\nD,4\nE,5\n";
+
+    private File bulkFile;
+
+    @Before
+    public void setUp() throws IOException {
+        bulkFile = File.createTempFile("sforceBulkAPI", ".csv");
+        try (FileOutputStream out = new FileOutputStream(bulkFile)) {
+            out.write(CSV.getBytes("UTF-8"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        bulkFile.delete();
+    }
+
+    /**
+     * A bulk connection that only keeps the headers to send.
+     */
+    static class TestBulkConnection extends BulkConnection {
+
+        private final Map<String, String> headers = new HashMap<>();
+
+        TestBulkConnection() throws AsyncApiException {
+            super(config());
+        }
+
+        private static ConnectorConfig config() {
+            ConnectorConfig config = new ConnectorConfig();
+            config.setSessionId("00Dx0000000001!session");
+            config.setRestEndpoint("https://localhost/services/async/35.0");
+            return config;
+        }
+
+        @Override
+        public void addHeader(String headerName, String headerValue) {
+            headers.put(headerName, headerValue);
+        }
+    }
+
+    /**
+     * A bulk runtime whose job is processed without Salesforce: each check of the job status processes one more batch,
+     * in the given order. A record is inserted with an id made of its name.
+     */
+    static class TestBulkRuntime extends SalesforceBulkRuntime {
+
+        private final TestBulkConnection connection;
+
+        private final List<Integer> processingOrder;
+
+        private final List<BatchInfo> batches = new ArrayList<>();
+
+        private final List<String> contents = new ArrayList<>();
+
+        private int processed;
+
+        /** Number of result streams closed. */
+        private int closedResults;
+
+        /** Number of chunks a query is split into, or -1 if the module does not support PK chunking. */
+        private int chunks;
+
+        /** Headers of the connection when the last job was created. */
+        private Map<String, String> jobHeaders;
+
+        private boolean failCreateJob;
+
+        TestBulkRuntime(Integer... processingOrder) throws AsyncApiException {
+            this(new TestBulkConnection(), processingOrder);
+        }
+
+        private TestBulkRuntime(TestBulkConnection connection, Integer... processingOrder) {
+            super(holder(connection));
+            this.connection = connection;
+            this.processingOrder = Arrays.asList(processingOrder);
+            setPollingStrategy(new SalesforceBulkPollingStrategy() {
+
+                @Override
+                public void reset() {
+                }
+
+                @Override
+                public long nextDelay(boolean progress) {
+                    return 0;
+                }
+            });
+        }
+
+        private static SalesforceSourceOrSink.ConnectionHolder holder(BulkConnection connection) {
+            SalesforceSourceOrSink.ConnectionHolder ch = new SalesforceSourceOrSink().new ConnectionHolder();
+            ch.bulkConnection = connection;
+            ch.governor = new SalesforceApiGovernor("00Dtest", 0);
+            return ch;
+        }
+
+        @Override
+        protected JobInfo createJob(JobInfo job) throws AsyncApiException {
+            jobHeaders = new HashMap<>(connection.headers);
+            if (failCreateJob) {
+                throw new AsyncApiException("Read timed out", AsyncExceptionCode.ClientInputError);
+            }
+            job.setId("750x0000000001");
+            return job;
+        }
+
+        @Override
+        protected BatchInfo createBatchFromStream(JobInfo job, Supplier<InputStream> content) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = content.get()) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    out.write(b);
+                }
+                contents.add(out.toString("UTF-8"));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            BatchInfo batch = new BatchInfo();
+            batch.setId("751x000000000" + batches.size());
+            batch.setState(BatchStateEnum.Queued);
+            batches.add(batch);
+            return batch;
+        }
+
+        @Override
+        protected JobInfo updateJob(JobInfo job) {
+            return job;
+        }
+
+        @Override
+        protected JobInfo getJobStatus(String jobID) {
+            if (processed < processingOrder.size()) {
+                batches.get(processingOrder.get(processed++)).setState(BatchStateEnum.Completed);
+            }
+            JobInfo status = new JobInfo();
+            status.setId(jobID);
+            status.setNumberBatchesCompleted(processed);
+            return status;
+        }
+
+        @Override
+        protected BatchInfoList getBatchInfoList(String jobID) {
+            BatchInfoList list = new BatchInfoList();
+            list.setBatchInfo(batches.toArray(new BatchInfo[batches.size()]));
+            return list;
+        }
+
+        @Override
+        protected InputStream getBatchResultStream(String jobID, String batchID) throws AsyncApiException,
+                ConnectionException {
+            String content = contents.get(batches.indexOf(getBatch(batchID)));
+            StringBuilder results = new StringBuilder("\"Id\",\"Success\",\"Created\",\"Error\"\n");
+            for (String line : content.substring(content.indexOf('\n') + 1).split("\n")) {
+                String name = line.substring(0, line.indexOf(','));
+                results.append("\"001").append(name).append("\",\"true\",\"true\",\"\"\n");
+            }
+            try {
+                return new ByteArrayInputStream(results.toString().getBytes("UTF-8")) {
+
+                    @Override
+                    public void close() throws IOException {
+                        closedResults++;
+                        super.close();
+                    }
+                };
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        protected BatchInfo getBatchInfo(String jobID, String batchID) {
+            BatchInfo batch = getBatch(batchID);
+            if (batch.getState() == BatchStateEnum.Queued && chunks < 0) {
+                batch.setState(BatchStateEnum.Failed);
+                batch.setStateMessage("PKChunking is not supported");
+            } else if (batch.getState() == BatchStateEnum.Queued && chunks > 0) {
+                // Salesforce creates the batches of the chunks, then marks the query batch as not processed.
+                for (int i = 0; i < chunks; i++) {
+                    BatchInfo chunk = new BatchInfo();
+                    chunk.setId("751x00000000C" + i);
+                    chunk.setState(BatchStateEnum.Queued);
+                    batches.add(chunk);
+                }
+                batch.setState(BatchStateEnum.NotProcessed);
+            }
+            return batch;
+        }
+
+        private BatchInfo getBatch(String batchID) {
+            for (BatchInfo batch : batches) {
+                if (batch.getId().equals(batchID)) {
+                    return batch;
+                }
+            }
+            throw new IllegalArgumentException(batchID);
+        }
+    }
+
+    @Test
+    public void testResultsInTheOrderBatchesComplete() throws Exception {
+        TestBulkRuntime runtime = new TestBulkRuntime(2, 0, 1);
+        runtime.submitBulk("Account", SalesforceOutputProperties.ACTION_INSERT, null, "csv", bulkFile.getPath(), 1000,
+                2);
+        try {
+            assertEquals(3, runtime.getBatchCount());
+
+            // The last batch is read first, each result still lines up with its record of the file.
+            assertEquals(2, runtime.nextCompletedBatch());
+            assertNames(runtime.getBatchLog(2), "E");
+            assertEquals(0, runtime.nextCompletedBatch());
+            assertNames(runtime.getBatchLog(0), "A", "B");
+            assertEquals(1, runtime.nextCompletedBatch());
+            assertNames(runtime.getBatchLog(1), "C", "D");
+            assertEquals(-1, runtime.nextCompletedBatch());
+        } finally {
+            runtime.close();
+        }
+    }
+
+    @Test
+    public void testExecuteWaitsForAllBatches() throws Exception {
+        TestBulkRuntime runtime = new TestBulkRuntime(1, 2, 0);
+        runtime.executeBulk("Account", SalesforceOutputProperties.ACTION_INSERT, null, "csv", bulkFile.getPath(), 1000,
+                2);
+        try {
+            assertEquals(3, runtime.getBatchCount());
+            assertNames(runtime.getBatchLog(0), "A", "B");
+            assertNames(runtime.getBatchLog(1), "C", "D");
+            assertNames(runtime.getBatchLog(2), "E");
+        } finally {
+            runtime.close();
+        }
+    }
+
+    @Test
+    public void testResultsReadRowByRow() throws Exception {
+        TestBulkRuntime runtime = new TestBulkRuntime(0, 1, 2);
+        runtime.executeBulk("Account", SalesforceOutputProperties.ACTION_INSERT, null, "csv", bulkFile.getPath(), 1000,
+                2);
+        try {
+            assertEquals(2, runtime.getBatchRowCount(0));
+            assertEquals(2, runtime.getBatchRowCount(1));
+            assertEquals(1, runtime.getBatchRowCount(2));
+
+            SalesforceBulkRuntime.BulkResultSet results = runtime.getBatchLogResultSet(1);
+            SalesforceBulkRuntime.BulkResult result = results.next();
+            assertEquals("C", result.getValue("Name"));
+            assertEquals("3", result.getValue("Phone"));
+            assertEquals("001C", result.getValue("Id"));
+            result = results.next();
+            assertEquals("D", result.getValue("Name"));
+            assertEquals("4", result.getValue("Phone"));
+            assertNull(results.next());
+            assertEquals(0, runtime.closedResults);
+            results.close();
+            assertEquals(1, runtime.closedResults);
+
+            // The base file is read again from the batch, whatever was read before.
+            results = runtime.getBatchLogResultSet(0);
+            assertEquals("A", results.next().getValue("Name"));
+            results.close();
+            assertEquals(2, runtime.closedResults);
+        } finally {
+            runtime.close();
+        }
+    }
+
+    @Test
+    public void testPkChunking() throws Exception {
+        TestBulkRuntime runtime = new TestBulkRuntime();
+        runtime.chunks = 3;
+        List<String> chunks = runtime.submitChunkedBulkQuery("Account", "select Id from Account", 1000);
+        assertEquals(Arrays.asList("751x00000000C0", "751x00000000C1", "751x00000000C2"), chunks);
+        assertEquals("750x0000000001", runtime.getJobId());
+        assertEquals("chunkSize=1000", runtime.jobHeaders.get("Sforce-Enable-PKChunking"));
+        // The next jobs of the connection are not chunked.
+        assertEquals("false", runtime.connection.headers.get("Sforce-Enable-PKChunking"));
+    }
+
+    @Test
+    public void testPkChunkingNotSupported() throws Exception {
+        TestBulkRuntime runtime = new TestBulkRuntime();
+        runtime.chunks = -1;
+        assertNull(runtime.submitChunkedBulkQuery("Account", "select Id from Account", 1000));
+        assertEquals("false", runtime.connection.headers.get("Sforce-Enable-PKChunking"));
+    }
+
+    @Test
+    public void testPkChunkingHeaderRemovedOnFailure() throws Exception {
+        TestBulkRuntime runtime = new TestBulkRuntime();
+        runtime.failCreateJob = true;
+        try {
+            runtime.submitChunkedBulkQuery("Account", "select Id from Account", 1000);
+            fail("The job should not be created");
+        } catch (AsyncApiException e) {
+            assertEquals("false", runtime.connection.headers.get("Sforce-Enable-PKChunking"));
+        }
+    }
+
+    private static void assertNames(List<SalesforceBulkRuntime.BulkResult> results, String... names) {
+        assertEquals(names.length, results.size());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], results.get(i).getValue("Name"));
+            assertEquals("001" + names[i], results.get(i).getValue("Id"));
+            assertEquals("true", results.get(i).getValue("Success"));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.SessionRenewer;
+
+public class SalesforceBulkSessionTest {
+
+    private ConnectorConfig config;
+
+    private SalesforceApiGovernor governor;
+
+    private int renewals;
+
+    @Before
+    public void setUp() {
+        governor = new SalesforceApiGovernor("00D000000000001", 1);
+        config = new ConnectorConfig();
+        config.setSessionId("session0");
+        config.setSessionRenewer(new SessionRenewer() {
+
+            @Override
+            public SessionRenewalHeader renewSession(ConnectorConfig connectorConfig) throws ConnectionException {
+                renewals++;
+                connectorConfig.setSessionId("session" + renewals);
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testRenewOnInvalidSession() throws Exception {
+        SalesforceBulkSession session = new SalesforceBulkSession(config, governor, 60000, 3, 1, 1);
+        final int[] calls = new int[1];
+        String result = session.execute(new SalesforceBulkSession.Call<String>() {
+
+            @Override
+            public String call() throws AsyncApiException {
+                if (calls[0]++ == 0) {
+                    throw new AsyncApiException("expired", AsyncExceptionCode.InvalidSessionId);
+                }
+                return config.getSessionId();
+            }
+        });
+        assertEquals("session1", result);
+        assertEquals(1, renewals);
+
+        // Another call rejected with the session renewed meanwhile does not renew it again.
+        session.renew("session0");
+        assertEquals(1, renewals);
+    }
+
+    @Test
+    public void testRetryTransientFailures() throws Exception {
+        SalesforceBulkSession session = new SalesforceBulkSession(config, governor, 60000, 3, 1, 1);
+        final int[] calls = new int[1];
+        String result = session.execute(new SalesforceBulkSession.Call<String>() {
+
+            @Override
+            public String call() throws ConnectionException {
+                if (calls[0]++ < 2) {
+                    throw new ConnectionException("timeout", new SocketTimeoutException());
+                }
+                return "done";
+            }
+        });
+        assertEquals("done", result);
+        assertEquals(3, calls[0]);
+        assertEquals(3, governor.getUsage().calls);
+        assertEquals(0, governor.getUsage().activeCalls);
+    }
+
+    @Test
+    public void testBoundedRetries() throws Exception {
+        SalesforceBulkSession session = new SalesforceBulkSession(config, governor, 60000, 2, 1, 1);
+        final int[] calls = new int[1];
+        try {
+            session.execute(new SalesforceBulkSession.Call<String>() {
+
+                @Override
+                public String call() throws ConnectionException {
+                    calls[0]++;
+                    throw new ConnectionException("timeout", new SocketTimeoutException());
+                }
+            });
+            fail("The call should have failed");
+        } catch (ConnectionException e) {
+            assertEquals(2, calls[0]);
+        }
+    }
+
+    @Test
+    public void testNoRetryOfSentUpdate() throws Exception {
+        SalesforceBulkSession session = new SalesforceBulkSession(config, governor, 60000, 3, 1, 1);
+        final int[] calls = new int[1];
+        try {
+            session.executeUpdate(new SalesforceBulkSession.Call<String>() {
+
+                @Override
+                public String call() throws ConnectionException {
+                    calls[0]++;
+                    // The job may have been created even though its response timed out.
+                    throw new ConnectionException("timeout", new SocketTimeoutException());
+                }
+            });
+            fail("The call should have failed");
+        } catch (ConnectionException e) {
+            assertEquals(1, calls[0]);
+        }
+    }
+
+    @Test
+    public void testRetryUpdateNotConnected() throws Exception {
+        SalesforceBulkSession session = new SalesforceBulkSession(config, governor, 60000, 3, 1, 1);
+        final int[] calls = new int[1];
+        String result = session.executeUpdate(new SalesforceBulkSession.Call<String>() {
+
+            @Override
+            public String call() throws ConnectionException {
+                if (calls[0]++ == 0) {
+                    throw new ConnectionException("refused", new ConnectException());
+                }
+                return "created";
+            }
+        });
+        assertEquals("created", result);
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void testNoRetryOnOtherFailures() throws Exception {
+        SalesforceBulkSession session = new SalesforceBulkSession(config, governor, 60000, 3, 1, 1);
+        final int[] calls = new int[1];
+        try {
+            session.execute(new SalesforceBulkSession.Call<String>() {
+
+                @Override
+                public String call() throws ConnectionException {
+                    calls[0]++;
+                    throw new ConnectionException("INVALID_FIELD");
+                }
+            });
+            fail("The call should have failed");
+        } catch (ConnectionException e) {
+            assertEquals(1, calls[0]);
+        }
+    }
+
+    @Test
+    public void testRenewIdleSession() throws Exception {
+        SalesforceBulkSession session = new SalesforceBulkSession(config, governor, -1, 3, 1, 1);
+        String result = session.execute(new SalesforceBulkSession.Call<String>() {
+
+            @Override
+            public String call() {
+                return config.getSessionId();
+            }
+        });
+        assertEquals("session1", result);
+    }
+}
@@ -0,0 +1,106 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.junit.Test;
+import org.talend.components.salesforce.SalesforceOutputProperties.OutputAction;
+
+public class SalesforceBulkSpillTest {
+
+    private static final Schema MODULE = SchemaBuilder.record("Account").fields() //
+            .name("Id").type().nullable().stringType().noDefault() //
+            .name("Name").type().nullable().stringType().noDefault() //
+            .name("CreatedDate").type().nullable().longType().noDefault() //
+            .endRecord();
+
+    private static final Schema INPUT = SchemaBuilder.record("Main").fields() //
+            .name("Id").type().nullable().stringType().noDefault() //
+            .name("Name").type().nullable().stringType().noDefault() //
+            .name("Comment").type().nullable().stringType().noDefault() //
+            .endRecord();
+
+    private static GenericData.Record record(Schema schema, Object... values) {
+        GenericData.Record record = new GenericData.Record(schema);
+        for (int i = 0; i < values.length; i++) {
+            record.put(i, values[i]);
+        }
+        return record;
+    }
+
+    private static List<String> read(File file) throws Exception {
+        return Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void testColumnsOfTheModule() throws Exception {
+        try (SalesforceBulkSpill spill = new SalesforceBulkSpill(OutputAction.INSERT, MODULE)) {
+            spill.write(record(INPUT, "001", "Acme, Inc.", "not in the module"));
+            spill.write(record(INPUT, "002", null, null));
+            spill.finish();
+            List<String> lines = read(spill.getFile());
+            assertEquals("Id,Name", lines.get(0));
+            assertEquals("001,\"Acme, Inc.\"", lines.get(1));
+            // A null value does not change the field.
+            assertEquals("002,", lines.get(2));
+            assertEquals(2, spill.getCount());
+        }
+    }
+
+    @Test
+    public void testDeleteOnlyNeedsId() throws Exception {
+        try (SalesforceBulkSpill spill = new SalesforceBulkSpill(OutputAction.DELETE, MODULE)) {
+            spill.writeId("001");
+            spill.writeId("002");
+            spill.finish();
+            assertEquals(Arrays.asList("Id", "001", "002"), read(spill.getFile()));
+            assertEquals(2, spill.getCount());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDeleteNotWrittenAsRecord() throws Exception {
+        try (SalesforceBulkSpill spill = new SalesforceBulkSpill(OutputAction.DELETE, MODULE)) {
+            // The writer takes the Id of the record, so that a record without Id is skipped as with the SOAP calls.
+            spill.write(record(INPUT, "001", "Acme", null));
+        }
+    }
+
+    @Test
+    public void testDatesInUtc() throws Exception {
+        Schema input = SchemaBuilder.record("Main").fields() //
+                .name("CreatedDate").type().nullable().longType().noDefault() //
+                .endRecord();
+        GenericData.Record record = new GenericData.Record(input);
+        // The adapters of the writer can give dates as well as plain values.
+        record.put(0, new Date(0L));
+        SalesforceBulkSpill spill = new SalesforceBulkSpill(OutputAction.UPDATE, MODULE);
+        spill.write(record);
+        spill.finish();
+        assertEquals("1970-01-01T00:00:00.000Z", read(spill.getFile()).get(1));
+        spill.close();
+        assertFalse(spill.getFile().exists());
+    }
+}
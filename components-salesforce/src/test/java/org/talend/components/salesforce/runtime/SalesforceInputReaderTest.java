@@ -0,0 +1,193 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.junit.Test;
+import org.talend.components.api.container.RuntimeContainer;
+import org.talend.components.salesforce.tsalesforceinput.TSalesforceInputProperties;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+public class SalesforceInputReaderTest {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("Account").fields() //
+            .name("Name").type().nullable().stringType().noDefault() //
+            .endRecord();
+
+    /**
+     * Returns the records of a query in pages of two, and keeps the calls made.
+     */
+    private static class PagingConnection extends PartnerConnection {
+
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        final CountDownLatch queryMoreCalled = new CountDownLatch(1);
+
+        private final int pages;
+
+        private ConnectionException failure;
+
+        PagingConnection(int pages) throws ConnectionException {
+            super(config());
+            this.pages = pages;
+        }
+
+        private static ConnectorConfig config() {
+            ConnectorConfig config = new ConnectorConfig();
+            config.setSessionId("session");
+            config.setAuthEndpoint("https://localhost/services/Soap/u/34.0");
+            config.setServiceEndpoint("https://localhost/services/Soap/u/34.0/00D000000000TST");
+            return config;
+        }
+
+        @Override
+        public QueryResult query(String queryString) throws ConnectionException {
+            calls.add(queryString);
+            return page(0);
+        }
+
+        @Override
+        public QueryResult queryMore(String queryLocator) throws ConnectionException {
+            calls.add(queryLocator);
+            queryMoreCalled.countDown();
+            if (failure != null) {
+                throw failure;
+            }
+            return page(Integer.parseInt(queryLocator.substring(queryLocator.indexOf('-') + 1)));
+        }
+
+        private QueryResult page(int page) {
+            SObject[] records = new SObject[2];
+            for (int i = 0; i < records.length; i++) {
+                records[i] = new SObject();
+                records[i].setType("Account");
+                records[i].setField("Name", "A" + (page * 2 + i));
+            }
+            QueryResult result = new QueryResult();
+            result.setRecords(records);
+            result.setSize(pages * 2);
+            result.setDone(page == pages - 1);
+            result.setQueryLocator(page == pages - 1 ? null : "01gx0000000001-" + (page + 1));
+            return result;
+        }
+    }
+
+    private static SalesforceInputReader createReader(final PagingConnection connection, boolean prefetchPages) {
+        TSalesforceInputProperties props = (TSalesforceInputProperties) new TSalesforceInputProperties("foo").init();
+        props.module.moduleName.setValue("Account");
+        props.module.schema.schema.setValue(SCHEMA);
+        props.prefetchPages.setValue(prefetchPages);
+        SalesforceSource source = new SalesforceSource() {
+
+            @Override
+            protected ConnectionHolder connect(RuntimeContainer container) throws IOException {
+                ConnectionHolder ch = new ConnectionHolder();
+                ch.connection = connection;
+                return ch;
+            }
+        };
+        source.initialize(null, props);
+        return new SalesforceInputReader(null, source, props);
+    }
+
+    private static List<Object> readAll(SalesforceInputReader reader) throws IOException {
+        List<Object> names = new ArrayList<>();
+        for (boolean available = reader.start(); available; available = reader.advance()) {
+            names.add(reader.getCurrent().get(0));
+        }
+        return names;
+    }
+
+    @Test
+    public void testPrefetchNextPage() throws Exception {
+        PagingConnection connection = new PagingConnection(3);
+        SalesforceInputReader reader = createReader(connection, true);
+        try {
+            assertTrue(reader.start());
+            // The second page is requested while the first one is read.
+            assertTrue(connection.queryMoreCalled.await(10, TimeUnit.SECONDS));
+            assertEquals("A0", reader.getCurrent().get(0));
+        } finally {
+            reader.close();
+        }
+
+        connection = new PagingConnection(3);
+        reader = createReader(connection, true);
+        try {
+            assertEquals(Arrays.<Object> asList("A0", "A1", "A2", "A3", "A4", "A5"), readAll(reader));
+            // Each page is requested once.
+            assertEquals(Arrays.asList("select Name from Account", "01gx0000000001-1", "01gx0000000001-2"),
+                    connection.calls);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testNoPrefetch() throws Exception {
+        PagingConnection connection = new PagingConnection(2);
+        SalesforceInputReader reader = createReader(connection, false);
+        try {
+            assertTrue(reader.start());
+            assertTrue(reader.advance());
+            assertEquals(1, connection.calls.size());
+            assertTrue(reader.advance());
+            assertEquals("A2", reader.getCurrent().get(0));
+            assertEquals(2, connection.calls.size());
+            assertTrue(reader.advance());
+            assertFalse(reader.advance());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testPrefetchFailure() throws Exception {
+        PagingConnection connection = new PagingConnection(2);
+        connection.failure = new ConnectionException("Query locator expired");
+        SalesforceInputReader reader = createReader(connection, true);
+        try {
+            assertTrue(reader.start());
+            assertTrue(reader.advance());
+            try {
+                reader.advance();
+                fail("The failure of the prefetched page should be reported");
+            } catch (IOException e) {
+                // As if the page was requested by the reader itself.
+                assertSame(connection.failure, e.getCause());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
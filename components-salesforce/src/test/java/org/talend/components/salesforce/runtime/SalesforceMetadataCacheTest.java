@@ -0,0 +1,101 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.talend.daikon.NamedThing;
+import org.talend.daikon.SimpleNamedThing;
+
+public class SalesforceMetadataCacheTest {
+
+    private static final SalesforceMetadataCache.Codec<String> TEXT = new SalesforceMetadataCache.Codec<String>() {
+
+        @Override
+        public String write(String value) {
+            return value;
+        }
+
+        @Override
+        public String read(String text) {
+            return text;
+        }
+    };
+
+    private static class CountingLoader implements SalesforceMetadataCache.Loader<String> {
+
+        int loads;
+
+        @Override
+        public String load() throws IOException {
+            loads++;
+            return "value" + loads;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCachedUntilExpired() throws Exception {
+        SalesforceMetadataCache cache = new SalesforceMetadataCache(SalesforceMetadataCache.MAX_ENTRIES);
+        CountingLoader loader = new CountingLoader();
+        assertEquals("value1", cache.get("org:Account", 60000, null, TEXT, loader));
+        assertEquals("value1", cache.get("org:Account", 60000, null, TEXT, loader));
+        assertEquals("value2", cache.get("org:Account", -1, null, TEXT, loader));
+        assertEquals(2, loader.loads);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        SalesforceMetadataCache cache = new SalesforceMetadataCache(2);
+        CountingLoader loader = new CountingLoader();
+        cache.get("org:Account", 60000, null, TEXT, loader);
+        cache.get("org:Contact", 60000, null, TEXT, loader);
+        cache.get("org:Account", 60000, null, TEXT, loader);
+        cache.get("org:Lead", 60000, null, TEXT, loader);
+        assertEquals("value1", cache.get("org:Account", 60000, null, TEXT, loader));
+        assertEquals("value4", cache.get("org:Contact", 60000, null, TEXT, loader));
+    }
+
+    @Test
+    public void testPersisted() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        new SalesforceMetadataCache(2).get("org:Account", 60000, folder.getRoot(), TEXT, loader);
+        // Another process finds the value in the directory.
+        SalesforceMetadataCache other = new SalesforceMetadataCache(2);
+        assertEquals("value1", other.get("org:Account", 60000, folder.getRoot(), TEXT, loader));
+        assertEquals(1, loader.loads);
+
+        other.invalidate("org:Account", folder.getRoot());
+        other = new SalesforceMetadataCache(2);
+        assertEquals("value2", other.get("org:Account", 60000, folder.getRoot(), TEXT, loader));
+    }
+
+    @Test
+    public void testNamesCodec() {
+        List<NamedThing> names = Arrays.<NamedThing> asList(new SimpleNamedThing("Account", "Account"),
+                new SimpleNamedThing("Custom__c", "Custom \"quoted\""));
+        List<NamedThing> read = SalesforceMetadataCache.NAMES.read(SalesforceMetadataCache.NAMES.write(names));
+        assertEquals(2, read.size());
+        assertEquals("Custom__c", read.get(1).getName());
+        assertEquals("Custom \"quoted\"", read.get(1).getDisplayName());
+    }
+}
@@ -0,0 +1,90 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SalesforceProxyAuthenticatorTest {
+
+    /**
+     * Plays a SOCKS 5 proxy asking for a user and password, and gives back the credentials it got.
+     */
+    private static String acceptCredentials(ServerSocket server) throws IOException {
+        try (Socket socket = server.accept()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            // Greeting: version, then the authentication methods of the client.
+            in.readUnsignedByte();
+            in.readFully(new byte[in.readUnsignedByte()]);
+            out.write(new byte[] { 5, 2 });
+            out.flush();
+            // User and password negotiation.
+            in.readUnsignedByte();
+            byte[] user = new byte[in.readUnsignedByte()];
+            in.readFully(user);
+            byte[] password = new byte[in.readUnsignedByte()];
+            in.readFully(password);
+            out.write(new byte[] { 1, 0 });
+            out.flush();
+            // Connect request to a host name, then the port.
+            in.readFully(new byte[4]);
+            in.readFully(new byte[in.readUnsignedByte() + 2]);
+            out.write(new byte[] { 5, 0, 0, 1, 0, 0, 0, 0, 0, 0 });
+            out.flush();
+            return new String(user, "UTF-8") + ":" + new String(password, "UTF-8");
+        }
+    }
+
+    @Test
+    public void testCredentialsOfTheProxy() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (final ServerSocket server = new ServerSocket(0)) {
+            SalesforceProxyAuthenticator.register("localhost", server.getLocalPort(), "proxyUser", "proxyPassword");
+            Future<String> credentials = executor.submit(() -> acceptCredentials(server));
+            Proxy proxy = new Proxy(Proxy.Type.SOCKS, new InetSocketAddress("localhost", server.getLocalPort()));
+            try (Socket socket = new Socket(proxy)) {
+                socket.connect(InetSocketAddress.createUnresolved("login.salesforce.invalid", 443), 10000);
+            }
+            assertEquals("proxyUser:proxyPassword", credentials.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOnlyForTheProxy() {
+        SalesforceProxyAuthenticator.register("proxy.example.com", 1080, "proxyUser", "proxyPassword");
+        assertEquals("proxyUser", Authenticator.requestPasswordAuthentication("PROXY.example.com", null, 1080,
+                "SOCKS5", "SOCKS authentication", null).getUserName());
+        assertNull(Authenticator.requestPasswordAuthentication("proxy.example.com", null, 1081, "SOCKS5",
+                "SOCKS authentication", null));
+        assertNull(Authenticator.requestPasswordAuthentication("proxy.example.com", null, 1080, "http", "realm",
+                "basic"));
+    }
+}
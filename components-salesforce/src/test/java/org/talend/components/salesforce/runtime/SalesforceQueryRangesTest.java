@@ -0,0 +1,41 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class SalesforceQueryRangesTest {
+
+    @Test
+    public void testCreatedDateRanges() throws Exception {
+        long first = SalesforceQueryRanges.parse("2016-01-01T00:00:00.000Z");
+        long last = SalesforceQueryRanges.parse("2016-01-04T00:00:00.000Z");
+        List<String> ranges = SalesforceQueryRanges.createdDateRanges(first, last, 3);
+        assertEquals(3, ranges.size());
+        assertEquals("CreatedDate < 2016-01-02T00:00:00Z", ranges.get(0));
+        assertEquals("CreatedDate >= 2016-01-02T00:00:00Z AND CreatedDate < 2016-01-03T00:00:00Z", ranges.get(1));
+        assertEquals("CreatedDate >= 2016-01-03T00:00:00Z", ranges.get(2));
+    }
+
+    @Test
+    public void testDatesTooCloseAreNotSplit() throws Exception {
+        long first = SalesforceQueryRanges.parse("2016-01-01T00:00:00.000Z");
+        assertTrue(SalesforceQueryRanges.createdDateRanges(first, first + 500, 4).isEmpty());
+        assertEquals(2, SalesforceQueryRanges.createdDateRanges(first, first + 2000, 4).size());
+    }
+}
@@ -0,0 +1,69 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.junit.Test;
+
+public class SalesforceSchemaConverterTest {
+
+    private static Schema newSchema() {
+        return SchemaBuilder.builder().record("Account").fields() //
+                .name("Name").type().nullable().stringType().noDefault() //
+                .name("IsDeleted").type().nullable().booleanType().noDefault() //
+                .name("NumberOfEmployees").type().nullable().intType().noDefault() //
+                .name("AnnualRevenue").type().nullable().doubleType().noDefault() //
+                .endRecord();
+    }
+
+    @Test
+    public void testConvert() {
+        SalesforceSchemaConverter converter = SalesforceSchemaConverter.forSchema(newSchema());
+        assertArrayEquals(new String[] { "Name", "IsDeleted", "NumberOfEmployees", "AnnualRevenue" },
+                converter.getNames());
+        assertEquals("Acme", converter.convert(0, "Acme"));
+        assertEquals(Boolean.TRUE, converter.convert(1, "true"));
+        assertEquals(250, converter.convert(2, "250"));
+        assertEquals(1.5, converter.convert(3, "1.5"));
+        assertNull(converter.convert(2, null));
+    }
+
+    @Test
+    public void testCachedBySchema() {
+        SalesforceSchemaConverter converter = SalesforceSchemaConverter.forSchema(newSchema());
+        assertSame(converter, SalesforceSchemaConverter.forSchema(newSchema()));
+
+        Schema other = newSchema();
+        other.getField("Name").addProp("talend.field.length", "80");
+        assertNotSame(converter, SalesforceSchemaConverter.forSchema(other));
+    }
+
+    @Test
+    public void testCacheBounded() {
+        SalesforceSchemaConverter converter = SalesforceSchemaConverter.forSchema(newSchema());
+        for (int i = 0; i < SalesforceSchemaConverter.MAX_ENTRIES; i++) {
+            SalesforceSchemaConverter.forSchema(SchemaBuilder.builder().record("Module" + i).fields() //
+                    .name("Name").type().nullable().stringType().noDefault() //
+                    .endRecord());
+        }
+        // The least recently used converter was dropped.
+        assertNotSame(converter, SalesforceSchemaConverter.forSchema(newSchema()));
+    }
+}
@@ -0,0 +1,85 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+public class SalesforceSessionPoolTest {
+
+    private static class CountingLogin implements SalesforceSessionPool.Login {
+
+        int logins;
+
+        @Override
+        public void login(ConnectorConfig config) throws ConnectionException {
+            logins++;
+            config.setSessionId("session" + logins);
+            config.setServiceEndpoint("https://na1.salesforce.com/services/Soap/u/34.0");
+        }
+    }
+
+    @Test
+    public void testCheckOutReusesSession() throws Exception {
+        SalesforceSessionPool pool = new SalesforceSessionPool(SalesforceSessionPool.DEFAULT_IDLE_TIMEOUT);
+        CountingLogin login = new CountingLogin();
+        ConnectorConfig first = new ConnectorConfig();
+        ConnectorConfig second = new ConnectorConfig();
+        pool.checkOut("key", first, login, null);
+        pool.checkOut("key", second, login, null);
+        assertEquals(1, login.logins);
+        assertEquals("session1", second.getSessionId());
+        assertEquals(first.getServiceEndpoint(), second.getServiceEndpoint());
+
+        pool.checkOut("other", new ConnectorConfig(), login, null);
+        assertEquals(2, login.logins);
+    }
+
+    @Test
+    public void testRenewOnce() throws Exception {
+        SalesforceSessionPool pool = new SalesforceSessionPool(SalesforceSessionPool.DEFAULT_IDLE_TIMEOUT);
+        CountingLogin login = new CountingLogin();
+        ConnectorConfig first = new ConnectorConfig();
+        ConnectorConfig second = new ConnectorConfig();
+        pool.checkOut("key", first, login, null);
+        pool.checkOut("key", second, login, null);
+
+        // Both connections find the session expired, only the first one logs in again.
+        pool.renew("key", first, login, null);
+        pool.renew("key", second, login, null);
+        assertEquals(2, login.logins);
+        assertEquals("session2", first.getSessionId());
+        assertEquals("session2", second.getSessionId());
+    }
+
+    @Test
+    public void testIdleSessionsEvicted() throws Exception {
+        SalesforceSessionPool pool = new SalesforceSessionPool(-1);
+        CountingLogin login = new CountingLogin();
+        pool.checkOut("key", new ConnectorConfig(), login, null);
+        pool.checkOut("key", new ConnectorConfig(), login, null);
+        assertEquals(2, login.logins);
+    }
+
+    @Test
+    public void testKeyDependsOnSecret() {
+        String key = SalesforceSessionPool.key("Basic", "https://www.salesforce.com", "user", "secret");
+        assertEquals(key, SalesforceSessionPool.key("Basic", "https://www.salesforce.com", "user", "secret"));
+        assertNotEquals(key, SalesforceSessionPool.key("Basic", "https://www.salesforce.com", "user", "other"));
+    }
+}
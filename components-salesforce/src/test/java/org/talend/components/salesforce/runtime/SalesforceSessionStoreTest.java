@@ -0,0 +1,75 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+public class SalesforceSessionStoreTest {
+
+    private static final String KEY = SalesforceSessionPool.key("Basic", "https://www.salesforce.com", "user", "secret");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadWrite() throws Exception {
+        SalesforceSessionStore store = new SalesforceSessionStore(folder.getRoot(), 60000);
+        assertNull(store.read(KEY));
+        store.write(KEY, "session1", "https://na1.salesforce.com");
+        assertArrayEquals(new String[] { "session1", "https://na1.salesforce.com" }, store.read(KEY));
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        SalesforceSessionStore store = new SalesforceSessionStore(folder.getRoot(), -1);
+        store.write(KEY, "session1", "https://na1.salesforce.com");
+        assertNull(store.read(KEY));
+    }
+
+    @Test
+    public void testSharedBetweenPools() throws Exception {
+        final int[] logins = new int[1];
+        SalesforceSessionPool.Login login = new SalesforceSessionPool.Login() {
+
+            @Override
+            public void login(ConnectorConfig config) throws ConnectionException {
+                logins[0]++;
+                config.setSessionId("session" + logins[0]);
+                config.setServiceEndpoint("https://na1.salesforce.com");
+            }
+        };
+        // Each pool stands for another process.
+        SalesforceSessionStore store = new SalesforceSessionStore(folder.getRoot(), 60000);
+        ConnectorConfig first = new ConnectorConfig();
+        new SalesforceSessionPool(60000).checkOut(KEY, first, login, store);
+        ConnectorConfig second = new ConnectorConfig();
+        SalesforceSessionPool other = new SalesforceSessionPool(60000);
+        other.checkOut(KEY, second, login, store);
+        assertEquals(1, logins[0]);
+        assertEquals("session1", second.getSessionId());
+
+        // The stored session was rejected: log in again.
+        other.renew(KEY, second, login, store);
+        assertEquals(2, logins[0]);
+        assertEquals("session2", store.read(KEY)[0]);
+    }
+}
@@ -15,15 +15,65 @@ package org.talend.components.salesforce.runtime;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
 import org.junit.Test;
 import org.talend.components.api.component.runtime.BoundedSource;
+import org.talend.components.api.container.RuntimeContainer;
+import org.talend.components.salesforce.tsalesforceinput.TSalesforceInputProperties;
+import org.talend.daikon.NamedThing;
+
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.Field;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
 
 public class SalesforceSourceTest {
 
+    /**
+     * Describes any module as a module without fields, and keeps the modules of each call.
+     */
+    private static class DescribeConnection extends PartnerConnection {
+
+        final List<List<String>> calls = new CopyOnWriteArrayList<>();
+
+        DescribeConnection() throws ConnectionException {
+            super(config());
+        }
+
+        private static ConnectorConfig config() {
+            ConnectorConfig config = new ConnectorConfig();
+            config.setSessionId("session");
+            config.setAuthEndpoint("https://localhost/services/Soap/u/34.0");
+            config.setServiceEndpoint("https://localhost/services/Soap/u/34.0/00D000000000TST");
+            return config;
+        }
+
+        @Override
+        public DescribeSObjectResult[] describeSObjects(String[] sObjectType) throws ConnectionException {
+            calls.add(Arrays.asList(sObjectType));
+            DescribeSObjectResult[] results = new DescribeSObjectResult[sObjectType.length];
+            for (int i = 0; i < sObjectType.length; i++) {
+                results[i] = new DescribeSObjectResult();
+                results[i].setName(sObjectType[i]);
+                results[i].setFields(new Field[0]);
+            }
+            return results;
+        }
+    }
+
     @Test
     public void testSplitIntoBundles() throws Exception {
         SalesforceSource salesforceSource = new SalesforceSource();
@@ -37,6 +87,117 @@ public class SalesforceSourceTest {
         assertEquals(0, new SalesforceSource().getEstimatedSizeBytes(null));
     }
 
+    @Test
+    public void testBulkQuery() throws Exception {
+        TSalesforceInputProperties props = (TSalesforceInputProperties) new TSalesforceInputProperties("foo").init();
+        props.module.moduleName.setValue("Account");
+        props.module.schema.schema.setValue(SchemaBuilder.record("Account").fields() //
+                .name("Id").type().stringType().noDefault() //
+                .name("Name").type().nullable().stringType().noDefault() //
+                .endRecord());
+        props.condition.setValue("Name like 'A%'");
+        SalesforceSource salesforceSource = new SalesforceSource();
+        salesforceSource.initialize(null, props);
+        assertEquals("select Id, Name from Account where Name like 'A%'", salesforceSource.getBulkQuery());
+
+        props.manualQuery.setValue(true);
+        props.query.setValue("select Id from Account");
+        assertEquals("select Id from Account", salesforceSource.getBulkQuery());
+    }
+
+    @Test
+    public void testNotSplitByDefault() throws Exception {
+        TSalesforceInputProperties props = (TSalesforceInputProperties) new TSalesforceInputProperties("foo").init();
+        props.module.moduleName.setValue("Account");
+        SalesforceSource salesforceSource = new SalesforceSource() {
+
+            @Override
+            protected ConnectionHolder connect(RuntimeContainer container) throws IOException {
+                throw new AssertionError("The query is not counted unless it is to be split");
+            }
+        };
+        salesforceSource.initialize(null, props);
+        assertEquals(0, salesforceSource.getEstimatedSizeBytes(null));
+        List<? extends BoundedSource> bundles = salesforceSource.splitIntoBundles(12, null);
+        assertEquals(1, bundles.size());
+        assertEquals(salesforceSource, bundles.get(0));
+    }
+
+    @Test
+    public void testMetadataInvalidated() throws Exception {
+        TSalesforceInputProperties props = (TSalesforceInputProperties) new TSalesforceInputProperties("foo").init();
+        props.connection.userPassword.userId.setValue("invalidated@talend.com");
+        props.connection.metadataCacheTtl.setValue(600);
+        final AtomicInteger describes = new AtomicInteger();
+        SalesforceSource salesforceSource = new SalesforceSource() {
+
+            @Override
+            protected ConnectionHolder connect(RuntimeContainer container) throws IOException {
+                return new ConnectionHolder();
+            }
+
+            @Override
+            protected List<NamedThing> getSchemaNames(PartnerConnection connection) throws IOException {
+                describes.incrementAndGet();
+                return Collections.emptyList();
+            }
+        };
+        salesforceSource.initialize(null, props);
+        salesforceSource.getSchemaNames((RuntimeContainer) null);
+        salesforceSource.getSchemaNames((RuntimeContainer) null);
+        assertEquals(1, describes.get());
+
+        // As when the wizard lists the modules.
+        SalesforceSourceOrSink.invalidateMetadata(props);
+        salesforceSource.getSchemaNames((RuntimeContainer) null);
+        assertEquals(2, describes.get());
+    }
+
+    @Test
+    public void testSchemasDescribedInGroups() throws Exception {
+        List<String> modules = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            modules.add("Custom" + i + "__c");
+        }
+        DescribeConnection connection = new DescribeConnection();
+        Map<String, Schema> schemas = new SalesforceSource().getSchemas(connection, modules);
+        assertEquals(3, connection.calls.size());
+        int described = 0;
+        for (List<String> call : connection.calls) {
+            assertTrue(call.size() <= 100);
+            described += call.size();
+        }
+        assertEquals(250, described);
+        assertEquals(250, schemas.size());
+        for (String module : modules) {
+            assertEquals(module, schemas.get(module).getName());
+        }
+    }
+
+    @Test
+    public void testOnlyMissingSchemasDescribed() throws Exception {
+        TSalesforceInputProperties props = (TSalesforceInputProperties) new TSalesforceInputProperties("foo").init();
+        props.connection.userPassword.userId.setValue("described@talend.com");
+        props.connection.metadataCacheTtl.setValue(600);
+        final DescribeConnection connection = new DescribeConnection();
+        SalesforceSource salesforceSource = new SalesforceSource() {
+
+            @Override
+            protected ConnectionHolder connect(RuntimeContainer container) throws IOException {
+                ConnectionHolder holder = new ConnectionHolder();
+                holder.connection = connection;
+                return holder;
+            }
+        };
+        salesforceSource.initialize(null, props);
+        salesforceSource.getSchemas((RuntimeContainer) null, Arrays.asList("Account", "Contact"));
+        Map<String, Schema> schemas = salesforceSource.getSchemas((RuntimeContainer) null,
+                Arrays.asList("Lead", "Account", "Contact"));
+        // The modules are in the order asked, only the one not in the cache being described.
+        assertEquals(Arrays.asList("Lead", "Account", "Contact"), new ArrayList<>(schemas.keySet()));
+        assertEquals(Arrays.asList(Arrays.asList("Account", "Contact"), Arrays.asList("Lead")), connection.calls);
+    }
+
     @Test
     public void testProducesSortedKeys() throws Exception {
         assertFalse(new SalesforceSource().producesSortedKeys(null));
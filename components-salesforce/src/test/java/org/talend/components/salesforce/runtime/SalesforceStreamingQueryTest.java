@@ -0,0 +1,155 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.IndexedRecord;
+import org.junit.Test;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class SalesforceStreamingQueryTest {
+
+    private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns=\"urn:partner.soap.sforce.com\" xmlns:sf=\"urn:sobject.partner.soap.sforce.com\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><soapenv:Body>";
+
+    private static final String ENVELOPE_END = "</soapenv:Body></soapenv:Envelope>";
+
+    private final Schema schema = SchemaBuilder.builder().record("Account").fields() //
+            .name("Id").type().nullable().stringType().noDefault() //
+            .name("Name").type().nullable().stringType().noDefault() //
+            .name("Phone").type().nullable().stringType().noDefault() //
+            .endRecord();
+
+    @Test
+    public void testParseQueryResponse() throws Exception {
+        String response = ENVELOPE_START + "<queryResponse><result xsi:type=\"QueryResult\">" //
+                + "<done>false</done><queryLocator>01gD0000002HU6KIAW-2000</queryLocator>" //
+                + "<records xsi:type=\"sf:sObject\"><sf:type>Account</sf:type><sf:Id>001D000000IqhSLIAZ</sf:Id>" //
+                + "<sf:Id>001D000000IqhSLIAZ</sf:Id><sf:Name>Acme &amp; Co</sf:Name>" //
+                + "<sf:Owner xsi:type=\"sf:sObject\"><sf:type>User</sf:type><sf:Name>Owner</sf:Name></sf:Owner>" //
+                + "<sf:Phone xsi:nil=\"true\"/></records>" //
+                + "<records xsi:type=\"sf:sObject\"><sf:type>Account</sf:type><sf:Id>001D000000IqhSMIAZ</sf:Id>" //
+                + "<sf:Id>001D000000IqhSMIAZ</sf:Id><sf:Name>Other</sf:Name><sf:Phone>555</sf:Phone></records>" //
+                + "<size>4</size></result></queryResponse>" + ENVELOPE_END;
+
+        SalesforceStreamingQuery.Page page = newQuery().parse(new ByteArrayInputStream(response.getBytes("UTF-8")));
+        assertFalse(page.done);
+        assertEquals("01gD0000002HU6KIAW-2000", page.queryLocator);
+        assertEquals(2, page.records.size());
+        IndexedRecord first = page.records.get(0);
+        assertEquals("001D000000IqhSLIAZ", first.get(0));
+        assertEquals("Acme & Co", first.get(1));
+        assertNull(first.get(2));
+        assertEquals("555", page.records.get(1).get(2));
+    }
+
+    @Test
+    public void testApiRequestsFromLimitInfo() throws Exception {
+        String response = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " xmlns=\"urn:partner.soap.sforce.com\"><soapenv:Header><LimitInfoHeader><limitInfo>"
+                + "<current>1200</current><limit>15000</limit><type>API REQUESTS</type>"
+                + "</limitInfo></LimitInfoHeader></soapenv:Header><soapenv:Body><queryResponse><result>"
+                + "<done>true</done><queryLocator/><size>0</size></result></queryResponse>" + ENVELOPE_END;
+        newQuery().parse(new ByteArrayInputStream(response.getBytes("UTF-8")));
+        PartnerConnection connection = new PartnerConnection(config());
+        SalesforceApiGovernor.Usage usage = SalesforceApiGovernor.forConnection(connection).getUsage();
+        assertEquals(1200, usage.apiRequests);
+        assertEquals(15000, usage.apiRequestsLimit);
+    }
+
+    @Test(expected = ConnectionException.class)
+    public void testParseFault() throws Exception {
+        String response = ENVELOPE_START + "<soapenv:Fault><faultcode>sf:MALFORMED_QUERY</faultcode>"
+                + "<faultstring>unexpected token</faultstring></soapenv:Fault>" + ENVELOPE_END;
+        newQuery().parse(new ByteArrayInputStream(response.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testProxyCredentials() throws Exception {
+        final byte[] response = (ENVELOPE_START + "<queryResponse><result xsi:type=\"QueryResult\"><done>true</done>"
+                + "<queryLocator xsi:nil=\"true\"/><size>0</size></result></queryResponse>" + ENVELOPE_END)
+                        .getBytes("UTF-8");
+        final List<String> authorizations = new ArrayList<>();
+        // Plays the HTTP proxy the query is sent through.
+        HttpServer proxy = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        proxy.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                authorizations.add(exchange.getRequestHeaders().getFirst("Proxy-Authorization"));
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        proxy.start();
+        try {
+            ConnectorConfig config = config();
+            config.setProxy(new Proxy(Proxy.Type.HTTP, proxy.getAddress()));
+            config.setProxyUsername("proxyUser");
+            config.setProxyPassword("proxyPassword");
+            PartnerConnection connection = new PartnerConnection(config);
+            SalesforceStreamingQuery query = new SalesforceStreamingQuery(connection, null, schema, 200, null);
+            SalesforceApiGovernor governor = SalesforceApiGovernor.forConnection(connection);
+            long calls = governor.getUsage().calls;
+            SalesforceStreamingQuery.Page page = query.query("select Id, Name, Phone from Account");
+            // The call waited for a permit of the org, as the calls of the partner binding.
+            assertEquals(calls + 1, governor.getUsage().calls);
+            assertEquals(0, governor.getUsage().activeCalls);
+            assertTrue(page.done);
+            assertEquals(0, page.records.size());
+            String token = Base64.getEncoder().encodeToString("proxyUser:proxyPassword".getBytes("UTF-8"));
+            assertEquals(Arrays.asList("Basic " + token), authorizations);
+        } finally {
+            proxy.stop(0);
+        }
+    }
+
+    private SalesforceStreamingQuery newQuery() throws ConnectionException {
+        return new SalesforceStreamingQuery(new PartnerConnection(config()), null, schema, 200, null);
+    }
+
+    private static ConnectorConfig config() {
+        ConnectorConfig config = new ConnectorConfig();
+        config.setSessionId("session");
+        config.setAuthEndpoint("http://salesforce.invalid/services/Soap/u/34.0");
+        config.setServiceEndpoint("http://salesforce.invalid/services/Soap/u/34.0/00D000000000STQ");
+        return config;
+    }
+}
@@ -0,0 +1,89 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class SalesforceValueParserTest {
+
+    private static final String[] TIME_ZONES = { "UTC", "Europe/Paris", "America/Los_Angeles", "Asia/Kolkata" };
+
+    @Test
+    public void testDateTimeMatchesSimpleDateFormat() throws Exception {
+        // Includes times skipped or repeated by daylight saving changes.
+        String[] values = { "2016-03-27T01:30:00.000Z", "2016-03-27T02:30:00.000Z", "2016-10-30T02:30:00.000Z",
+                "2016-11-06T01:30:00.000Z", "1970-01-01T00:00:00.000Z", "2000-02-29T23:59:59.000Z" };
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            SimpleDateFormat format = new SimpleDateFormat(SalesforceValueParser.DATETIME_PATTERN);
+            format.setTimeZone(timeZone);
+            for (String value : values) {
+                assertEquals(id + " " + value, (Long) format.parse(value).getTime(),
+                        SalesforceValueParser.parseDateTime(value, timeZone.toZoneId()));
+            }
+        }
+    }
+
+    @Test
+    public void testDateMatchesSimpleDateFormat() throws Exception {
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            SimpleDateFormat format = new SimpleDateFormat(SalesforceValueParser.DATE_PATTERN);
+            format.setTimeZone(timeZone);
+            for (String value : new String[] { "2016-01-31", "2016-03-27", "1969-12-31" }) {
+                assertEquals(id + " " + value, (Long) format.parse(value).getTime(),
+                        SalesforceValueParser.parseDate(value, timeZone.toZoneId()));
+            }
+        }
+    }
+
+    @Test
+    public void testUnexpectedDatesAreLeftToTheFallback() {
+        ZoneId utc = ZoneId.of("UTC");
+        assertNull(SalesforceValueParser.parseDate("2016-1-31", utc));
+        assertNull(SalesforceValueParser.parseDate("2016-02-30", utc));
+        assertNull(SalesforceValueParser.parseDateTime("2016-01-31T10:00:00Z", utc));
+        assertNull(SalesforceValueParser.parseDateTime("2016-01-31 10:00:00.000Z", utc));
+    }
+
+    @Test
+    public void testDecimal() {
+        for (String value : new String[] { "0", "-0", "12.50", "-3.14159", ".5", "999999999999999999", "+7.0" }) {
+            assertEquals(value, new BigDecimal(value), SalesforceValueParser.parseDecimal(value));
+        }
+        assertNull(SalesforceValueParser.parseDecimal("1E+3"));
+        assertNull(SalesforceValueParser.parseDecimal("1234567890123456789"));
+        assertNull(SalesforceValueParser.parseDecimal("1.2.3"));
+        assertNull(SalesforceValueParser.parseDecimal("-"));
+    }
+
+    @Test
+    public void testDouble() {
+        for (String value : new String[] { "0", "-0", "0.1", "12.50", "-3.14159", "123456789.123456", "1e3" }) {
+            Double parsed = SalesforceValueParser.parseDouble(value);
+            if (parsed != null) {
+                assertEquals(value, Double.valueOf(value), parsed);
+            }
+        }
+        assertNull(SalesforceValueParser.parseDouble("1e3"));
+        assertNull(SalesforceValueParser.parseDouble("12345678901234567"));
+    }
+}
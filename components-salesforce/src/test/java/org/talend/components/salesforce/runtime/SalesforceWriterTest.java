@@ -0,0 +1,179 @@
+// ============================================================================
+//
+// Copyright (C) 2006-2016 Talend Inc. - www.talend.com
+//
+// This source code is available under agreement available at
+// %InstallDIR%\features\org.talend.rcp.branding.%PRODUCTNAME%\%PRODUCTNAME%license.txt
+//
+// You should have received a copy of the agreement
+// along with this program; if not, write to Talend SA
+// 9 rue Pages 92150 Suresnes, France
+//
+// ============================================================================
+package org.talend.components.salesforce.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.junit.Test;
+import org.talend.components.api.component.runtime.Writer;
+import org.talend.components.api.component.runtime.WriterResult;
+import org.talend.components.api.container.RuntimeContainer;
+import org.talend.components.salesforce.tsalesforceoutput.TSalesforceOutputProperties;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.SaveResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+
+public class SalesforceWriterTest {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("Account").fields() //
+            .name("Name").type().nullable().stringType().noDefault() //
+            .endRecord();
+
+    /**
+     * Counts the records created, and whether it was used by several threads at the same time.
+     */
+    private static class CountingConnection extends PartnerConnection {
+
+        final AtomicInteger created = new AtomicInteger();
+
+        final AtomicInteger active = new AtomicInteger();
+
+        final AtomicBoolean shared = new AtomicBoolean();
+
+        final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+        CountingConnection() throws ConnectionException {
+            super(config());
+        }
+
+        private static ConnectorConfig config() {
+            ConnectorConfig config = new ConnectorConfig();
+            config.setSessionId("session");
+            config.setAuthEndpoint("https://localhost/services/Soap/u/34.0");
+            config.setServiceEndpoint("https://localhost/services/Soap/u/34.0/00D000000000TST");
+            return config;
+        }
+
+        @Override
+        public SaveResult[] create(SObject[] sObjects) throws ConnectionException {
+            if (active.incrementAndGet() > 1) {
+                shared.set(true);
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new ConnectionException("Interrupted", e);
+            } finally {
+                active.decrementAndGet();
+            }
+            created.addAndGet(sObjects.length);
+            batches.add(sObjects.length);
+            SaveResult[] results = new SaveResult[sObjects.length];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new SaveResult();
+                results[i].setSuccess(true);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Gives a new connection for each connect, or always the same one as a referenced connection does.
+     */
+    private static class TestSink extends SalesforceSink {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<CountingConnection> connections = new ArrayList<>();
+
+        final boolean referenced;
+
+        TestSink(boolean referenced) {
+            this.referenced = referenced;
+        }
+
+        @Override
+        protected ConnectionHolder connect(RuntimeContainer container) throws IOException {
+            try {
+                if (connections.isEmpty() || !referenced) {
+                    connections.add(new CountingConnection());
+                }
+            } catch (ConnectionException e) {
+                throw new IOException(e);
+            }
+            ConnectionHolder ch = new ConnectionHolder();
+            ch.connection = connections.get(connections.size() - 1);
+            return ch;
+        }
+    }
+
+    private static int write(TestSink sink, int records) throws Exception {
+        return write(sink, records, 3, "Name");
+    }
+
+    private static int write(TestSink sink, int records, int concurrentConnections, String name) throws Exception {
+        TSalesforceOutputProperties props = (TSalesforceOutputProperties) new TSalesforceOutputProperties("foo").init();
+        props.module.moduleName.setValue("Account");
+        props.module.schema.schema.setValue(SCHEMA);
+        props.outputAction.setValue(TSalesforceOutputProperties.OutputAction.INSERT);
+        props.extendInsert.setValue(true);
+        props.commitLevel.setValue(5);
+        props.concurrentConnections.setValue(concurrentConnections);
+        sink.initialize(null, props);
+        Writer<WriterResult> writer = new SalesforceWriteOperation(sink).createWriter(null);
+        writer.open("test");
+        for (int i = 0; i < records; i++) {
+            GenericData.Record record = new GenericData.Record(SCHEMA);
+            record.put(0, name + i);
+            writer.write(record);
+        }
+        return writer.close().getDataCount();
+    }
+
+    @Test
+    public void testConcurrentConnections() throws Exception {
+        TestSink sink = new TestSink(false);
+        assertEquals(23, write(sink, 23));
+        assertEquals(3, sink.connections.size());
+        int created = 0;
+        for (CountingConnection connection : sink.connections) {
+            created += connection.created.get();
+            assertFalse(connection.shared.get());
+        }
+        assertEquals(23, created);
+    }
+
+    @Test
+    public void testPayloadLimit() throws Exception {
+        char[] large = new char[4 * 1024 * 1024];
+        Arrays.fill(large, 'a');
+        TestSink sink = new TestSink(false);
+        assertEquals(5, write(sink, 5, 1, new String(large)));
+        // Each record counts before it is added: a third one would take the batch over 10MB.
+        assertEquals(Arrays.asList(2, 2, 1), sink.connections.get(0).batches);
+    }
+
+    @Test
+    public void testReferencedConnectionNotShared() throws Exception {
+        TestSink sink = new TestSink(true);
+        assertEquals(23, write(sink, 23));
+        assertEquals(1, sink.connections.size());
+        assertEquals(23, sink.connections.get(0).created.get());
+        assertFalse(sink.connections.get(0).shared.get());
+    }
+}